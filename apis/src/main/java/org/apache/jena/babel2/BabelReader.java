@@ -25,6 +25,10 @@ import java.util.Properties;
 
 import com.hp.hpl.jena.rdf.model.Model;
 
+/**
+ * Long reads should check the {@link org.apache.jena.babel2.util.Cancellation}
+ * in their properties as they go, and stop once it is cancelled.
+ */
 public interface BabelReader {
 
 	public String getLabel(Locale locale);
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2;
+
+import java.util.Properties;
+
+/**
+ * What a reader or writer can do, so that the engine can pick the
+ * cheapest way to run a conversion.
+ * <ul>
+ * <li>streaming: a reader passes triples on as it parses them; a writer
+ * takes triples one at a time through a {@link TripleSink};</li>
+ * <li>ordering: the order in which a reader produces triples, or the
+ * order a writer needs them in;</li>
+ * <li>deterministic: the same input gives the same output, blank node
+ * labels aside.</li>
+ * </ul>
+ * Readers and writers describe themselves by implementing
+ * {@link DescribedReader} or {@link DescribedWriter}; others are assumed
+ * to need a whole model.
+ */
+public class Capabilities {
+	public enum Ordering {
+		/**
+		 * Triples in no particular order.
+		 */
+		ANY,
+		/**
+		 * All the triples about a subject next to each other.
+		 */
+		SUBJECT_GROUPED,
+		/**
+		 * A writer that needs the whole graph to look things up in; a
+		 * reader that looks up what it has already read.
+		 */
+		GRAPH
+	}
+	
+	final static public Capabilities s_materialized = new Capabilities(false, Ordering.GRAPH, false);
+	
+	final private boolean	m_streaming;
+	final private Ordering	m_ordering;
+	final private boolean	m_deterministic;
+	
+	public Capabilities(boolean streaming, Ordering ordering, boolean deterministic) {
+		m_streaming = streaming;
+		m_ordering = ordering;
+		m_deterministic = deterministic;
+	}
+	
+	public boolean isStreaming() {
+		return m_streaming;
+	}
+	
+	public Ordering getOrdering() {
+		return m_ordering;
+	}
+	
+	public boolean isDeterministic() {
+		return m_deterministic;
+	}
+	
+	static public Capabilities forReader(BabelReader reader, Properties properties) {
+		if (reader instanceof DescribedReader) {
+			return ((DescribedReader) reader).getReaderCapabilities(properties);
+		}
+		return s_materialized;
+	}
+	
+	static public Capabilities forWriter(BabelWriter writer, Properties properties) {
+		if (writer instanceof DescribedWriter) {
+			return ((DescribedWriter) writer).getWriterCapabilities(properties);
+		}
+		return s_materialized;
+	}
+	
+	@Override
+	public String toString() {
+		return "streaming=" + m_streaming + ", ordering=" + m_ordering + ", deterministic=" + m_deterministic;
+	}
+}
@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * A reader that can pass on triples as it parses them, instead of
+ * collecting them into a model. As with {@link BabelReader#takesReader()},
+ * only one of the two methods needs to be implemented. The sink's
+ * <code>start()</code> and <code>finish()</code> are the caller's business,
+ * since a conversion may read several inputs into one sink.
+ */
+public interface StreamingBabelReader extends DescribedReader {
+
+	public void read(Reader reader, TripleSink sink, Properties properties, Locale locale) throws Exception;
+	public void read(InputStream inputStream, TripleSink sink, Properties properties, Locale locale) throws Exception;
+
+}
@@ -0,0 +1,37 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * A writer that can serialize triples as they are produced, so that a
+ * conversion does not have to hold all of its data in a model. As with
+ * {@link BabelWriter#takesWriter()}, only one of the two methods needs to
+ * be implemented.
+ */
+public interface StreamingBabelWriter extends DescribedWriter {
+
+	public TripleSink createSink(Writer writer, Properties properties, Locale locale) throws Exception;
+	public TripleSink createSink(OutputStream outputStream, Properties properties, Locale locale) throws Exception;
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2;
+
+import java.io.IOException;
+
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * Receives a conversion as a stream of triples instead of a materialized
+ * model. {@link #start()} is called once before anything else and
+ * {@link #finish()} once after the last triple; neither is called again
+ * after a method has failed. Prefixes may arrive at any time.
+ */
+public interface TripleSink {
+
+	public void start() throws IOException;
+	
+	public void prefix(String prefix, String uri) throws IOException;
+	
+	public void triple(Triple triple) throws IOException;
+	
+	public void finish() throws IOException;
+
+}
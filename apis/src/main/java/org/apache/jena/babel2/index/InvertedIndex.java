@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.index;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.babel2.util.LimitedInputStream;
+
+/**
+ * Looks up terms in an index written by {@link InvertedIndexBuilder}. The
+ * subjects, predicates and term dictionary are loaded into memory; the
+ * postings are memory-mapped and decoded on each lookup. Lookups may be
+ * made from several threads at once.
+ */
+public class InvertedIndex {
+	/**
+	 * One occurrence of a term.
+	 */
+	static public class Posting {
+		final public String	m_subject;
+		final public String	m_predicate;
+		final public int	m_position;
+
+		Posting(String subject, String predicate, int position) {
+			m_subject = subject;
+			m_predicate = predicate;
+			m_position = position;
+		}
+
+		@Override
+		public String toString() {
+			return m_subject + " " + m_predicate + " " + m_position;
+		}
+	}
+
+	final private String[]		m_subjects;
+	final private String[]		m_predicates;
+	final private String[]		m_terms;
+	final private int[]			m_counts;
+	final private long[]		m_offsets;
+	final private ByteBuffer	m_postings;
+
+	private InvertedIndex(String[] subjects, String[] predicates, String[] terms, int[] counts, long[] offsets, ByteBuffer postings) {
+		m_subjects = subjects;
+		m_predicates = predicates;
+		m_terms = terms;
+		m_counts = counts;
+		m_offsets = offsets;
+		m_postings = postings;
+	}
+
+	static public InvertedIndex open(File file) throws IOException {
+		LimitedInputStream counter = new LimitedInputStream(
+			new BufferedInputStream(new FileInputStream(file), 64 * 1024), Long.MAX_VALUE);
+		DataInputStream in = new DataInputStream(counter);
+		try {
+			if (in.readInt() != InvertedIndexBuilder.s_magic) {
+				throw new IOException(file + " is not an index");
+			}
+			int version = in.readInt();
+			if (version != InvertedIndexBuilder.s_version) {
+				throw new IOException("Unsupported index version " + version + " in " + file);
+			}
+
+			String[] subjects = new String[(int) readVarint(in)];
+			for (int i = 0; i < subjects.length; i++) {
+				subjects[i] = readString(in);
+			}
+			String[] predicates = new String[(int) readVarint(in)];
+			for (int i = 0; i < predicates.length; i++) {
+				predicates[i] = readString(in);
+			}
+
+			int termCount = (int) readVarint(in);
+			String[] terms = new String[termCount];
+			int[] counts = new int[termCount];
+			long[] offsets = new long[termCount];
+			String previous = "";
+			for (int t = 0; t < termCount; t++) {
+				int shared = (int) readVarint(in);
+				terms[t] = previous.substring(0, shared) + readString(in);
+				counts[t] = (int) readVarint(in);
+				offsets[t] = readVarint(in);
+				previous = terms[t];
+			}
+
+			long length = readVarint(in);
+			long position = counter.getCount();
+
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				ByteBuffer postings = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, position, length);
+				return new InvertedIndex(subjects, predicates, terms, counts, offsets, postings);
+			} finally {
+				raf.close(); // the mapping stays valid
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	public int getTermCount() {
+		return m_terms.length;
+	}
+
+	public int getSubjectCount() {
+		return m_subjects.length;
+	}
+
+	/**
+	 * Returns the occurrences of a term, sorted by subject, predicate and
+	 * position, or an empty list if the term is not in the index.
+	 */
+	public List<Posting> lookup(String term) {
+		int t = Arrays.binarySearch(m_terms, InvertedIndexBuilder.normalize(term));
+		if (t < 0) {
+			return Collections.emptyList();
+		}
+
+		ByteBuffer buffer = m_postings.duplicate();
+		buffer.position((int) m_offsets[t]);
+
+		List<Posting> postings = new ArrayList<Posting>(m_counts[t]);
+		int subject = 0, predicate = -1, position = 0;
+		for (int i = 0; i < m_counts[t]; i++) {
+			int delta = (int) readVarint(buffer);
+			if (delta != 0) {
+				predicate = -1;
+			}
+			subject += delta;
+			int p = (int) readVarint(buffer);
+			int value = (int) readVarint(buffer);
+			position = (p == predicate) ? position + value : value;
+			predicate = p;
+			postings.add(new Posting(m_subjects[subject], m_predicates[predicate], position));
+		}
+		return postings;
+	}
+
+	/**
+	 * Returns the subjects whose text contains a term.
+	 */
+	public Set<String> lookupSubjects(String term) {
+		Set<String> subjects = new LinkedHashSet<String>();
+		for (Posting posting : lookup(term)) {
+			subjects.add(posting.m_subject);
+		}
+		return subjects;
+	}
+
+	static private long readVarint(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException();
+			}
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	static private long readVarint(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = buffer.get();
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	static private String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[(int) readVarint(in)];
+		in.readFully(bytes);
+		return new String(bytes, InvertedIndexBuilder.s_utf8);
+	}
+}
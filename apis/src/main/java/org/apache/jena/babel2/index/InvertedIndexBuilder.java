@@ -0,0 +1,255 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Builds an {@link InvertedIndex} from text attached to subjects. Text is
+ * split into lower case terms at anything that is not a letter or a digit,
+ * and each occurrence is recorded with its subject, its predicate and its
+ * position among the terms of that subject and predicate.
+ * <p>
+ * The index is written in one go by {@link #write(OutputStream)}:
+ * <pre>
+ *   "BBLX" version
+ *   subjects:   count, then the strings, in id order
+ *   predicates: count, then the strings, in id order
+ *   terms:      count, then for each term in sorted order the length of
+ *               the prefix it shares with the previous term, the rest of
+ *               it, its number of postings and the offset of its postings
+ *   postings:   per term, (subject delta, predicate, position delta)
+ *               triples sorted by subject, predicate and position
+ * </pre>
+ * All numbers after the version are unsigned varints; strings are a
+ * length and UTF-8 bytes. The subject is a delta from the subject of the
+ * previous posting of the term. The predicate is written as is. The
+ * position is a delta from the previous position only when the subject
+ * and predicate are the same as in the previous posting; otherwise it is
+ * written as is.
+ */
+public class InvertedIndexBuilder {
+	final static int s_magic = 0x42424c58; // "BBLX"
+	final static int s_version = 1;
+	final static Charset s_utf8 = Charset.forName("UTF-8");
+
+	final static private int s_maxTermLength = 64;
+
+	static private class Postings {
+		int[]	m_entries = new int[12];
+		int		m_size = 0;
+
+		void add(int subject, int predicate, int position) {
+			if (m_size + 3 > m_entries.length) {
+				m_entries = Arrays.copyOf(m_entries, m_entries.length * 2);
+			}
+			m_entries[m_size++] = subject;
+			m_entries[m_size++] = predicate;
+			m_entries[m_size++] = position;
+		}
+	}
+
+	final private Map<String, Integer>	m_subjectIds = new HashMap<String, Integer>();
+	final private List<String>			m_subjects = new ArrayList<String>();
+	final private Map<String, Integer>	m_predicateIds = new HashMap<String, Integer>();
+	final private List<String>			m_predicates = new ArrayList<String>();
+	final private Map<String, Postings>	m_postings = new HashMap<String, Postings>();
+
+	// next position per (subject, predicate)
+	final private Map<Long, int[]>		m_positions = new HashMap<Long, int[]>();
+
+	/**
+	 * Indexes the terms of some text of a subject.
+	 */
+	public void add(String subject, String predicate, String text) {
+		int subjectId = id(subject, m_subjectIds, m_subjects);
+		int predicateId = id(predicate, m_predicateIds, m_predicates);
+
+		Long field = Long.valueOf(((long) subjectId << 32) | predicateId);
+		int[] position = m_positions.get(field);
+		if (position == null) {
+			position = new int[1];
+			m_positions.put(field, position);
+		}
+
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+				i++;
+			}
+			int start = i;
+			while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+				i++;
+			}
+			if (i > start) {
+				String term = normalize(text.substring(start, Math.min(i, start + s_maxTermLength)));
+				Postings postings = m_postings.get(term);
+				if (postings == null) {
+					postings = new Postings();
+					m_postings.put(term, postings);
+				}
+				postings.add(subjectId, predicateId, position[0]++);
+			}
+		}
+	}
+
+	public int getTermCount() {
+		return m_postings.size();
+	}
+
+	public void write(OutputStream outputStream) throws IOException {
+		String[] terms = m_postings.keySet().toArray(new String[m_postings.size()]);
+		Arrays.sort(terms);
+
+		// postings first, since the dictionary needs their offsets
+		ByteArrayOutputStream postings = new ByteArrayOutputStream();
+		long[] offsets = new long[terms.length];
+		int[] counts = new int[terms.length];
+		for (int t = 0; t < terms.length; t++) {
+			offsets[t] = postings.size();
+			counts[t] = writePostings(postings, m_postings.get(terms[t]));
+		}
+
+		DataOutputStream out = new DataOutputStream(outputStream);
+		out.writeInt(s_magic);
+		out.writeInt(s_version);
+
+		writeVarint(out, m_subjects.size());
+		for (String subject : m_subjects) {
+			writeString(out, subject);
+		}
+		writeVarint(out, m_predicates.size());
+		for (String predicate : m_predicates) {
+			writeString(out, predicate);
+		}
+
+		writeVarint(out, terms.length);
+		String previous = "";
+		for (int t = 0; t < terms.length; t++) {
+			String term = terms[t];
+			int shared = 0;
+			int max = Math.min(term.length(), previous.length());
+			while (shared < max && term.charAt(shared) == previous.charAt(shared)) {
+				shared++;
+			}
+			writeVarint(out, shared);
+			writeString(out, term.substring(shared));
+			writeVarint(out, counts[t]);
+			writeVarint(out, offsets[t]);
+			previous = term;
+		}
+
+		writeVarint(out, postings.size());
+		postings.writeTo(out);
+		out.flush();
+	}
+
+	static public String normalize(String term) {
+		return term.toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Sorts the postings of a term and writes them delta-encoded, returning
+	 * how many there are.
+	 */
+	static private int writePostings(OutputStream out, Postings postings) throws IOException {
+		int count = postings.m_size / 3;
+		int[] entries = postings.m_entries;
+
+		// entries usually arrive in order, as triples come grouped by subject
+		boolean sorted = true;
+		for (int i = 1; i < count && sorted; i++) {
+			sorted = compare(entries, 3 * (i - 1), entries, 3 * i) <= 0;
+		}
+		if (!sorted) {
+			int[][] rows = new int[count][];
+			for (int i = 0; i < count; i++) {
+				rows[i] = Arrays.copyOfRange(entries, 3 * i, 3 * i + 3);
+			}
+			Arrays.sort(rows, new Comparator<int[]>() {
+				public int compare(int[] a, int[] b) {
+					return InvertedIndexBuilder.compare(a, 0, b, 0);
+				}
+			});
+			entries = new int[3 * count];
+			for (int i = 0; i < count; i++) {
+				System.arraycopy(rows[i], 0, entries, 3 * i, 3);
+			}
+		}
+
+		int subject = 0, predicate = -1, position = 0;
+		for (int i = 0; i < 3 * count; i += 3) {
+			writeVarint(out, entries[i] - subject);
+			if (entries[i] != subject) {
+				predicate = -1;
+			}
+			writeVarint(out, entries[i + 1]);
+			writeVarint(out, entries[i + 1] == predicate ? entries[i + 2] - position : entries[i + 2]);
+			subject = entries[i];
+			predicate = entries[i + 1];
+			position = entries[i + 2];
+		}
+		return count;
+	}
+
+	static private int compare(int[] a, int i, int[] b, int j) {
+		for (int k = 0; k < 3; k++) {
+			if (a[i + k] != b[j + k]) {
+				return a[i + k] < b[j + k] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	static private int id(String s, Map<String, Integer> ids, List<String> strings) {
+		Integer id = ids.get(s);
+		if (id == null) {
+			id = strings.size();
+			ids.put(s, id);
+			strings.add(s);
+		}
+		return id;
+	}
+
+	static void writeVarint(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7fL) != 0) {
+			out.write((int) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	static void writeString(OutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(s_utf8);
+		writeVarint(out, bytes.length);
+		out.write(bytes);
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.sink;
+
+import org.apache.jena.babel2.TripleSink;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * A {@link TripleSink} that collects what it receives into a graph, for
+ * when a streamed conversion has to be materialized after all.
+ */
+public class GraphSink implements TripleSink {
+	final private Graph m_graph;
+
+	public GraphSink(Graph graph) {
+		m_graph = graph;
+	}
+
+	public Graph getGraph() {
+		return m_graph;
+	}
+
+	public void start() {
+	}
+
+	public void prefix(String prefix, String uri) {
+		m_graph.getPrefixMapping().setNsPrefix(prefix, uri);
+	}
+
+	public void triple(Triple triple) {
+		m_graph.add(triple);
+	}
+
+	public void finish() {
+	}
+}
@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.sink;
+
+import org.apache.jena.babel2.util.Util;
+
+/**
+ * Thrown by a {@link LimitSink} to stop the reader feeding it once the
+ * limit is reached. Readers and graphs may wrap it, so look for it with
+ * {@link #isCause(Throwable)}.
+ */
+public class LimitReachedException extends RuntimeException {
+	private static final long serialVersionUID = 4530962117254188393L;
+
+	public LimitReachedException() {
+		super("Limit reached");
+	}
+	
+	/**
+	 * Whether the exception, or any exception that caused it, is a
+	 * <code>LimitReachedException</code>.
+	 */
+	static public boolean isCause(Throwable e) {
+		return Util.hasCause(e, LimitReachedException.class);
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.sink;
+
+import java.io.IOException;
+
+import org.apache.jena.babel2.TripleSink;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * Passes on to another sink a window of what it receives: it skips the
+ * first <code>offset</code> items or triples and passes on the next
+ * <code>limit</code>. Items are runs of triples about the same subject, so
+ * they are exact when the triples come grouped by subject.
+ * <p>
+ * The first triple past the window throws a {@link LimitReachedException},
+ * so that the reader stops; the caller catches it and finishes the sink as
+ * usual. Anything received after that is dropped.
+ */
+public class LimitSink implements TripleSink {
+	final private TripleSink	m_sink;
+	final private long			m_offset;
+	final private long			m_limit;
+	final private boolean		m_byItems;
+	
+	private long				m_count = 0;
+	private Node				m_subject;
+	private boolean				m_reached = false;
+	
+	/**
+	 * @param limit how many items or triples to pass on, or a negative
+	 * number for no limit
+	 */
+	public LimitSink(TripleSink sink, long offset, long limit, boolean byItems) {
+		m_sink = sink;
+		m_offset = Math.max(0, offset);
+		m_limit = limit;
+		m_byItems = byItems;
+	}
+	
+	public boolean isReached() {
+		return m_reached;
+	}
+	
+	public void start() throws IOException {
+		m_sink.start();
+	}
+	
+	public void prefix(String prefix, String uri) throws IOException {
+		m_sink.prefix(prefix, uri);
+	}
+	
+	public void triple(Triple triple) throws IOException {
+		if (m_reached) {
+			return;
+		}
+		
+		if (m_byItems) {
+			if (!triple.getSubject().equals(m_subject)) {
+				m_subject = triple.getSubject();
+				m_count++;
+			}
+		} else {
+			m_count++;
+		}
+		
+		if (m_count <= m_offset) {
+			return;
+		} else if (m_limit >= 0 && m_count > m_offset + m_limit) {
+			m_reached = true;
+			throw new LimitReachedException();
+		}
+		m_sink.triple(triple);
+	}
+	
+	public void finish() throws IOException {
+		m_sink.finish();
+	}
+}
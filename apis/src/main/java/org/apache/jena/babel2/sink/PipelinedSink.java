@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.sink;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.jena.babel2.TripleSink;
+
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * A sink that hands what it receives to another sink running on a thread
+ * of its own, so that parsing and serializing overlap. The two threads
+ * exchange batches from a fixed pool: the reading thread fills a batch
+ * while the writing thread drains another, and blocks when all batches
+ * are waiting to be written.
+ * <p>
+ * An exception thrown by the other sink is rethrown to the reading thread
+ * on its next hand-off or at {@link #finish()}. If reading fails instead,
+ * {@link #cancel()} stops the writing thread.
+ */
+public class PipelinedSink implements TripleSink {
+	final static public int s_defaultBatchSize = 1024;
+	final static public int s_defaultBatchCount = 4;
+	
+	/**
+	 * Triples and prefixes, in the order received.
+	 */
+	static private class Batch {
+		final Object[]	m_items;
+		int				m_size;
+		boolean			m_last;
+		
+		Batch(int size) {
+			m_items = new Object[size];
+		}
+	}
+	
+	final private TripleSink				m_sink;
+	final private BlockingQueue<Batch>		m_free;
+	final private BlockingQueue<Batch>		m_full;
+	private Batch							m_batch;
+	
+	private Thread							m_thread;
+	private volatile Throwable				m_error;
+	
+	public PipelinedSink(TripleSink sink) {
+		this(sink, s_defaultBatchSize, s_defaultBatchCount);
+	}
+	
+	public PipelinedSink(TripleSink sink, int batchSize, int batchCount) {
+		m_sink = sink;
+		m_free = new ArrayBlockingQueue<Batch>(batchCount);
+		m_full = new ArrayBlockingQueue<Batch>(batchCount);
+		for (int i = 0; i < batchCount - 1; i++) {
+			m_free.add(new Batch(batchSize));
+		}
+		m_batch = new Batch(batchSize);
+	}
+	
+	public void start() throws IOException {
+		m_thread = new Thread(new Runnable() {
+			public void run() {
+				drain();
+			}
+		}, "babel-pipeline");
+		m_thread.setDaemon(true);
+		m_thread.start();
+	}
+	
+	public void prefix(String prefix, String uri) throws IOException {
+		add(new String[] { prefix, uri });
+	}
+	
+	public void triple(Triple triple) throws IOException {
+		add(triple);
+	}
+	
+	/**
+	 * Waits for the other sink to write everything and finish.
+	 */
+	public void finish() throws IOException {
+		m_batch.m_last = true;
+		handOff();
+		try {
+			m_thread.join();
+		} catch (InterruptedException e) {
+			m_thread.interrupt();
+			throw new InterruptedIOException();
+		}
+		checkError();
+	}
+	
+	/**
+	 * Stops the writing thread without finishing the other sink. Does
+	 * nothing once {@link #finish()} has returned.
+	 */
+	public void cancel() {
+		if (m_thread != null && m_thread.isAlive()) {
+			m_thread.interrupt();
+		}
+	}
+	
+	private void add(Object item) throws IOException {
+		Batch batch = m_batch;
+		batch.m_items[batch.m_size++] = item;
+		if (batch.m_size == batch.m_items.length) {
+			handOff();
+		}
+	}
+	
+	private void handOff() throws IOException {
+		checkError();
+		try {
+			m_full.put(m_batch);
+			m_batch = m_batch.m_last ? null : m_free.take();
+		} catch (InterruptedException e) {
+			cancel();
+			throw new InterruptedIOException();
+		}
+	}
+	
+	private void checkError() throws IOException {
+		Throwable e = m_error;
+		if (e instanceof IOException) {
+			throw (IOException) e;
+		} else if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		} else if (e instanceof Error) {
+			throw (Error) e;
+		} else if (e != null) {
+			throw new IOException(e.toString());
+		}
+	}
+	
+	/*
+	 * Runs on the writing thread. After a failure it keeps taking batches,
+	 * without writing them, so that the reading thread never blocks on a
+	 * sink that has gone away.
+	 */
+	private void drain() {
+		try {
+			m_sink.start();
+		} catch (Throwable e) {
+			m_error = e;
+		}
+		try {
+			while (true) {
+				Batch batch = m_full.take();
+				if (m_error == null) {
+					try {
+						write(batch);
+						if (batch.m_last) {
+							m_sink.finish();
+						}
+					} catch (Throwable e) {
+						m_error = e;
+					}
+				}
+				if (batch.m_last) {
+					return;
+				}
+				batch.m_size = 0;
+				Arrays.fill(batch.m_items, null);
+				m_free.put(batch);
+			}
+		} catch (InterruptedException e) {
+			// cancelled
+		}
+	}
+	
+	private void write(Batch batch) throws IOException {
+		for (int i = 0; i < batch.m_size; i++) {
+			Object item = batch.m_items[i];
+			if (item instanceof Triple) {
+				m_sink.triple((Triple) item);
+			} else {
+				String[] prefix = (String[]) item;
+				m_sink.prefix(prefix[0], prefix[1]);
+			}
+		}
+	}
+}
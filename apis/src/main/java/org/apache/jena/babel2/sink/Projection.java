@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.sink;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Which triples a conversion keeps: those whose predicate is included and
+ * not excluded, about subjects with an included type and no excluded one.
+ * An empty include set includes everything. A subject without types is
+ * kept unless types are included explicitly. The type triples themselves
+ * are subject to the predicate sets like any other.
+ * <p>
+ * The projection is applied between reader and writer, and also handed to
+ * readers through their properties, see {@link #get(Properties)}, so that
+ * those that can skip work for triples that will be dropped do so.
+ */
+public class Projection {
+	final static private String s_key = Projection.class.getName();
+	
+	final private Set<String> m_includePredicates;
+	final private Set<String> m_excludePredicates;
+	final private Set<String> m_includeTypes;
+	final private Set<String> m_excludeTypes;
+	
+	public Projection(
+		Set<String> includePredicates, 
+		Set<String> excludePredicates, 
+		Set<String> includeTypes, 
+		Set<String> excludeTypes
+	) {
+		m_includePredicates = nonNull(includePredicates);
+		m_excludePredicates = nonNull(excludePredicates);
+		m_includeTypes = nonNull(includeTypes);
+		m_excludeTypes = nonNull(excludeTypes);
+	}
+	
+	/**
+	 * Creates a projection from lists of URIs separated by spaces or commas,
+	 * any of which may be null. Returns null if all of them are empty.
+	 */
+	static public Projection create(
+		String includePredicates, 
+		String excludePredicates, 
+		String includeTypes, 
+		String excludeTypes
+	) {
+		Projection projection = new Projection(
+			parseSet(includePredicates), 
+			parseSet(excludePredicates), 
+			parseSet(includeTypes), 
+			parseSet(excludeTypes));
+		return projection.isEmpty() ? null : projection;
+	}
+	
+	/**
+	 * Returns the projection of the conversion the given reader properties
+	 * belong to, or null if everything is kept.
+	 */
+	static public Projection get(Properties properties) {
+		Object projection = properties.get(s_key);
+		return projection instanceof Projection ? (Projection) projection : null;
+	}
+	
+	static public void set(Properties properties, Projection projection) {
+		if (projection == null) {
+			properties.remove(s_key);
+		} else {
+			properties.put(s_key, projection);
+		}
+	}
+	
+	public boolean isEmpty() {
+		return m_includePredicates.isEmpty() && m_excludePredicates.isEmpty() && !hasTypeFilter();
+	}
+	
+	/**
+	 * Whether subjects are kept or dropped by their types, which takes
+	 * knowing all the types of a subject before passing on its triples.
+	 */
+	public boolean hasTypeFilter() {
+		return !m_includeTypes.isEmpty() || !m_excludeTypes.isEmpty();
+	}
+	
+	public boolean acceptsPredicate(String uri) {
+		return (m_includePredicates.isEmpty() || m_includePredicates.contains(uri)) &&
+			!m_excludePredicates.contains(uri);
+	}
+	
+	public boolean acceptsType(String uri) {
+		return acceptsTypes(Collections.singleton(uri));
+	}
+	
+	/**
+	 * Whether a subject with the given types is kept.
+	 */
+	public boolean acceptsTypes(Collection<String> uris) {
+		boolean included = m_includeTypes.isEmpty();
+		for (String uri : uris) {
+			if (m_excludeTypes.contains(uri)) {
+				return false;
+			}
+			included |= m_includeTypes.contains(uri);
+		}
+		return included;
+	}
+	
+	static private Set<String> parseSet(String value) {
+		Set<String> set = new HashSet<String>();
+		if (value != null) {
+			for (String s : StringUtils.split(value, " ,")) {
+				set.add(s);
+			}
+		}
+		return set;
+	}
+	
+	static private Set<String> nonNull(Set<String> set) {
+		return set == null ? Collections.<String>emptySet() : set;
+	}
+}
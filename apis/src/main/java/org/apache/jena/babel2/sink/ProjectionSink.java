@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.sink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.babel2.TripleSink;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+/**
+ * Passes on to another sink only the triples a {@link Projection} keeps.
+ * Filtering by predicate is done triple by triple. Filtering by type
+ * holds back each run of triples about a subject until the subject
+ * changes, so it needs the triples grouped by subject.
+ */
+public class ProjectionSink implements TripleSink {
+	final static private Node s_type = RDF.type.asNode();
+	
+	final private Projection	m_projection;
+	final private TripleSink	m_sink;
+	
+	final private List<Triple>	m_group = new ArrayList<Triple>();
+	final private List<String>	m_types = new ArrayList<String>();
+	private Node				m_subject;
+	
+	public ProjectionSink(Projection projection, TripleSink sink) {
+		m_projection = projection;
+		m_sink = sink;
+	}
+	
+	public void start() throws IOException {
+		m_sink.start();
+	}
+	
+	public void prefix(String prefix, String uri) throws IOException {
+		m_sink.prefix(prefix, uri);
+	}
+	
+	public void triple(Triple triple) throws IOException {
+		if (!m_projection.hasTypeFilter()) {
+			if (m_projection.acceptsPredicate(triple.getPredicate().getURI())) {
+				m_sink.triple(triple);
+			}
+			return;
+		}
+		
+		if (!triple.getSubject().equals(m_subject)) {
+			endGroup();
+			m_subject = triple.getSubject();
+		}
+		if (s_type.equals(triple.getPredicate()) && triple.getObject().isURI()) {
+			m_types.add(triple.getObject().getURI());
+		}
+		if (m_projection.acceptsPredicate(triple.getPredicate().getURI())) {
+			m_group.add(triple);
+		}
+	}
+	
+	public void finish() throws IOException {
+		endGroup();
+		m_sink.finish();
+	}
+	
+	private void endGroup() throws IOException {
+		if (m_subject != null && m_projection.acceptsTypes(m_types)) {
+			for (Triple triple : m_group) {
+				m_sink.triple(triple);
+			}
+		}
+		m_group.clear();
+		m_types.clear();
+		m_subject = null;
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.sink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.babel2.TripleSink;
+import org.apache.jena.babel2.util.Cancellation;
+
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * A base for sinks that write a header before the first triple, and need
+ * to know something about the triples to do so, such as the namespaces of
+ * their predicates. The first triples are held back, up to the sample
+ * size, then {@link #writeHeader(List)} sees them before they are passed
+ * on to {@link #writeTriple(Triple)}. Memory stays bounded by the sample
+ * size, however many triples follow.
+ * <p>
+ * The sink checks its {@link Cancellation} before each triple.
+ */
+public abstract class SamplingSink implements TripleSink {
+	final static public int s_defaultSampleSize = 1000;
+	
+	final private int						m_sampleSize;
+	final private Cancellation				m_cancellation;
+	private List<Triple>					m_sample;
+	
+	/**
+	 * The prefixes received before the header was written, by prefix.
+	 */
+	final protected Map<String, String>		m_prefixes = new LinkedHashMap<String, String>();
+	
+	protected SamplingSink(int sampleSize) {
+		this(sampleSize, Cancellation.s_never);
+	}
+	
+	protected SamplingSink(int sampleSize, Cancellation cancellation) {
+		m_sampleSize = Math.max(1, sampleSize);
+		m_cancellation = cancellation;
+		m_sample = new ArrayList<Triple>(Math.min(m_sampleSize, s_defaultSampleSize));
+	}
+	
+	public void start() throws IOException {
+	}
+	
+	public void prefix(String prefix, String uri) throws IOException {
+		if (m_sample != null) {
+			m_prefixes.put(prefix, uri);
+		} else {
+			writePrefix(prefix, uri);
+		}
+	}
+	
+	public void triple(Triple triple) throws IOException {
+		m_cancellation.check();
+		if (m_sample != null) {
+			m_sample.add(triple);
+			if (m_sample.size() >= m_sampleSize) {
+				endSampling();
+			}
+		} else {
+			writeTriple(triple);
+		}
+	}
+	
+	public void finish() throws IOException {
+		if (m_sample != null) {
+			endSampling();
+		}
+		writeFooter();
+	}
+	
+	private void endSampling() throws IOException {
+		List<Triple> sample = m_sample;
+		m_sample = null;
+		
+		writeHeader(sample);
+		for (Triple triple : sample) {
+			writeTriple(triple);
+		}
+	}
+	
+	/**
+	 * Writes the header, given the prefixes in {@link #m_prefixes} and the
+	 * first triples, which may be all of them.
+	 */
+	abstract protected void writeHeader(List<Triple> sample) throws IOException;
+	
+	/**
+	 * Handles a prefix that arrives after the header has been written.
+	 */
+	abstract protected void writePrefix(String prefix, String uri) throws IOException;
+	
+	abstract protected void writeTriple(Triple triple) throws IOException;
+	
+	abstract protected void writeFooter() throws IOException;
+}
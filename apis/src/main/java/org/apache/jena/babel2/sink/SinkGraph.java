@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.sink;
+
+import java.io.IOException;
+
+import org.apache.jena.babel2.TripleSink;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.shared.JenaException;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.shared.impl.PrefixMappingImpl;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.NullIterator;
+
+/**
+ * A write-only graph that passes every triple added to it, and every
+ * prefix set on it, straight on to a {@link TripleSink}. Wrapped in a model
+ * it lets readers written against <code>Model</code> feed a streaming
+ * writer. Nothing is kept, so the graph always looks empty: readers that
+ * query back what they have read need a real model.
+ * <p>
+ * Since <code>Graph.add</code> cannot throw checked exceptions, failures of
+ * the sink come out wrapped in a <code>JenaException</code>.
+ */
+public class SinkGraph extends GraphBase {
+	final private TripleSink	m_sink;
+	private int					m_count = 0;
+
+	public SinkGraph(TripleSink sink) {
+		m_sink = sink;
+	}
+
+	public TripleSink getSink() {
+		return m_sink;
+	}
+
+	/**
+	 * Returns how many triples have been passed on.
+	 */
+	public int getCount() {
+		return m_count;
+	}
+
+	@Override
+	public void performAdd(Triple t) {
+		try {
+			m_sink.triple(t);
+			m_count++;
+		} catch (IOException e) {
+			throw new JenaException(e);
+		}
+	}
+
+	@Override
+	protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m) {
+		return new NullIterator<Triple>();
+	}
+
+	@Override
+	protected int graphBaseSize() {
+		return 0;
+	}
+
+	@Override
+	protected PrefixMapping createPrefixMapping() {
+		return new PrefixMappingImpl() {
+			@Override
+			public PrefixMapping setNsPrefix(String prefix, String uri) {
+				super.setNsPrefix(prefix, uri);
+				try {
+					m_sink.prefix(prefix, uri);
+				} catch (IOException e) {
+					throw new JenaException(e);
+				}
+				return this;
+			}
+		};
+	}
+}
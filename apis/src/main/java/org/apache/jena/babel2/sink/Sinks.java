@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.sink;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.jena.babel2.TripleSink;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+ * Helpers for working with {@link TripleSink}s.
+ */
+public final class Sinks {
+	private Sinks() {
+	}
+
+	/**
+	 * Sends the prefixes and then the triples of a model to a sink, from
+	 * start to finish. Triples come in the order the model's graph lists
+	 * them, which for Jena's in-memory graph groups them by subject.
+	 */
+	static public void emit(Model model, TripleSink sink) throws IOException {
+		Graph graph = model.getGraph();
+
+		sink.start();
+		for (Map.Entry<String, String> entry : model.getNsPrefixMap().entrySet()) {
+			sink.prefix(entry.getKey(), entry.getValue());
+		}
+
+		ExtendedIterator<Triple> i = graph.find(Node.ANY, Node.ANY, Node.ANY);
+		try {
+			while (i.hasNext()) {
+				sink.triple(i.next());
+			}
+		} finally {
+			i.close();
+		}
+		sink.finish();
+	}
+}
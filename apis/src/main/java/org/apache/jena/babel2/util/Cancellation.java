@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.util;
+
+import java.io.FilterOutputStream;
+import java.io.FilterReader;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Properties;
+
+/**
+ * Lets a conversion be stopped from another thread, or once a deadline
+ * has passed. Readers and writers call {@link #check()} as they go, every
+ * row or triple or so, and stop with a {@link CancelledException} once
+ * the conversion has been cancelled.
+ * <p>
+ * A conversion's cancellation travels in its reader and writer
+ * properties, see {@link #get(Properties)}. Conversions that nobody can
+ * cancel get {@link #s_never}, so that callers need not test for null.
+ */
+public class Cancellation {
+    final static private String s_key = Cancellation.class.getName();
+
+    /**
+     * Never cancelled, and cannot be.
+     */
+    final static public Cancellation s_never = new Cancellation() {
+        @Override
+        public void cancel(String reason) {
+        }
+
+        @Override
+        public void setDeadline(long deadline) {
+        }
+
+        // shared by every conversion, so it must not count checks
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void check() {
+        }
+    };
+
+    // the clock is only read every so many checks
+    final static private int s_clockMask = 0xff;
+
+    private volatile String m_reason;
+    private volatile long m_deadline = Long.MAX_VALUE;
+    private int m_checks;
+
+    /**
+     * Returns the cancellation of the conversion the given reader or
+     * writer properties belong to, or {@link #s_never} if it has none.
+     */
+    static public Cancellation get(Properties properties) {
+        Object cancellation = properties.get(s_key);
+        return cancellation instanceof Cancellation ? (Cancellation) cancellation : s_never;
+    }
+
+    static public void set(Properties properties, Cancellation cancellation) {
+        properties.put(s_key, cancellation);
+    }
+
+    /**
+     * Cancels the conversion. The first reason given is the one reported.
+     */
+    public void cancel(String reason) {
+        if (m_reason == null) {
+            m_reason = reason;
+        }
+    }
+
+    /**
+     * Sets the time, in milliseconds since the epoch, after which the
+     * conversion counts as cancelled.
+     */
+    public void setDeadline(long deadline) {
+        m_deadline = deadline;
+    }
+
+    public boolean isCancelled() {
+        if (m_reason == null && System.currentTimeMillis() >= m_deadline) {
+            cancel("Deadline exceeded");
+        }
+        return m_reason != null;
+    }
+
+    /**
+     * Throws if the conversion has been cancelled. Cheap enough to call
+     * for every triple: the deadline is only compared with the clock on
+     * one call in a few hundred.
+     */
+    public void check() throws CancelledException {
+        if (m_reason == null && (++m_checks & s_clockMask) == 0 && 
+            System.currentTimeMillis() >= m_deadline) {
+            cancel("Deadline exceeded");
+        }
+        if (m_reason != null) {
+            throw new CancelledException(m_reason);
+        }
+    }
+
+    /**
+     * Returns a reader that checks this cancellation before each read, for
+     * parsers that cannot be checked from within.
+     */
+    public Reader watch(Reader reader) {
+        if (this == s_never) {
+            return reader;
+        }
+        return new FilterReader(reader) {
+            @Override
+            public int read() throws IOException {
+                check();
+                return super.read();
+            }
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                check();
+                return super.read(cbuf, off, len);
+            }
+        };
+    }
+
+    /**
+     * Returns a writer that checks this cancellation before each write, for
+     * serializers that cannot be checked from within. A write that fails,
+     * say because the client has gone, cancels the conversion, so that a
+     * reader on another thread stops too.
+     */
+    public Writer watch(Writer writer) {
+        if (this == s_never) {
+            return writer;
+        }
+        return new FilterWriter(writer) {
+            @Override
+            public void write(int c) throws IOException {
+                check();
+                try {
+                    super.write(c);
+                } catch (IOException e) {
+                    throw failed(e);
+                }
+            }
+
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                check();
+                try {
+                    super.write(cbuf, off, len);
+                } catch (IOException e) {
+                    throw failed(e);
+                }
+            }
+
+            @Override
+            public void write(String str, int off, int len) throws IOException {
+                check();
+                try {
+                    super.write(str, off, len);
+                } catch (IOException e) {
+                    throw failed(e);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                try {
+                    super.flush();
+                } catch (IOException e) {
+                    throw failed(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns an output stream that checks this cancellation before each
+     * write and, like {@link #watch(Writer)}, cancels the conversion if a
+     * write fails.
+     */
+    public OutputStream watch(OutputStream outputStream) {
+        if (this == s_never) {
+            return outputStream;
+        }
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(int b) throws IOException {
+                check();
+                try {
+                    out.write(b);
+                } catch (IOException e) {
+                    throw failed(e);
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                check();
+                try {
+                    out.write(b, off, len);
+                } catch (IOException e) {
+                    throw failed(e);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    throw failed(e);
+                }
+            }
+        };
+    }
+
+    private IOException failed(IOException e) {
+        cancel("Output failed: " + e.getMessage());
+        return e;
+    }
+}
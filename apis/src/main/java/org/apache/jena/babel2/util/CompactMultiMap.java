@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link MultiMap} for building on a single thread. The values of a key
+ * are kept in a plain array; once a key has more than a few values, a hash
+ * set is added so that membership tests stay constant time. Keys iterate
+ * in insertion order.
+ */
+public class CompactMultiMap<K, V> implements MultiMap<K, V> {
+    // below this many values a linear scan beats hashing
+    final static int s_setThreshold = 8;
+
+    /**
+     * The values of one key.
+     */
+    static class Values {
+        Object[]        m_items = new Object[2];
+        int             m_size = 0;
+        Set<Object>     m_set;
+
+        void add(Object value) {
+            if (m_size == m_items.length) {
+                m_items = Arrays.copyOf(m_items, m_size * 2);
+            }
+            m_items[m_size++] = value;
+
+            if (m_set != null) {
+                m_set.add(value);
+            } else if (m_size > s_setThreshold) {
+                m_set = new HashSet<Object>(Arrays.asList(m_items).subList(0, m_size));
+            }
+        }
+
+        boolean contains(Object value) {
+            if (m_set != null) {
+                return m_set.contains(value);
+            }
+            for (int i = 0; i < m_size; i++) {
+                if (value == null ? m_items[i] == null : value.equals(m_items[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Object get(int index) {
+            if (index < 0 || index >= m_size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_size);
+            }
+            return m_items[index];
+        }
+    }
+
+    final private Map<K, Values> m_map = new LinkedHashMap<K, Values>();
+
+    public void put(K key, V value) {
+        Values values = m_map.get(key);
+        if (values == null) {
+            values = new Values();
+            m_map.put(key, values);
+        }
+        values.add(value);
+    }
+
+    public boolean putUnique(K key, V value) {
+        Values values = m_map.get(key);
+        if (values == null) {
+            values = new Values();
+            m_map.put(key, values);
+        } else if (values.contains(value)) {
+            return false;
+        }
+        values.add(value);
+        return true;
+    }
+
+    public boolean contains(K key, V value) {
+        Values values = m_map.get(key);
+        return values != null && values.contains(value);
+    }
+
+    public int count(K key) {
+        Values values = m_map.get(key);
+        return values == null ? 0 : values.m_size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        Values values = m_map.get(key);
+        return values == null ? null : (V) values.m_items[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key, int index) {
+        Values values = m_map.get(key);
+        return values == null ? null : (V) values.get(index);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<V> getAll(K key) {
+        Values values = m_map.get(key);
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        return (List<V>) Collections.unmodifiableList(Arrays.asList(values.m_items).subList(0, values.m_size));
+    }
+
+    public boolean remove(K key) {
+        return m_map.remove(key) != null;
+    }
+
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(m_map.keySet());
+    }
+
+    public int size() {
+        return m_map.size();
+    }
+
+    public void clear() {
+        m_map.clear();
+    }
+}
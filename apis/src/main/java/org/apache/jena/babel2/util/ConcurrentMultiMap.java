@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe {@link MultiMap}. Keys live in a
+ * <code>ConcurrentHashMap</code>, and each key's values are locked on their
+ * own, so threads filling different keys do not contend. {@link #getAll}
+ * returns a snapshot. A value put while its key is being removed may be
+ * dropped with the key.
+ */
+public class ConcurrentMultiMap<K, V> implements MultiMap<K, V> {
+    final private ConcurrentHashMap<K, CompactMultiMap.Values> m_map =
+        new ConcurrentHashMap<K, CompactMultiMap.Values>();
+
+    public void put(K key, V value) {
+        CompactMultiMap.Values values = getValues(key);
+        synchronized (values) {
+            values.add(value);
+        }
+    }
+
+    public boolean putUnique(K key, V value) {
+        CompactMultiMap.Values values = getValues(key);
+        synchronized (values) {
+            if (values.contains(value)) {
+                return false;
+            }
+            values.add(value);
+            return true;
+        }
+    }
+
+    public boolean contains(K key, V value) {
+        CompactMultiMap.Values values = m_map.get(key);
+        if (values == null) {
+            return false;
+        }
+        synchronized (values) {
+            return values.contains(value);
+        }
+    }
+
+    public int count(K key) {
+        CompactMultiMap.Values values = m_map.get(key);
+        if (values == null) {
+            return 0;
+        }
+        synchronized (values) {
+            return values.m_size;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        CompactMultiMap.Values values = m_map.get(key);
+        if (values == null) {
+            return null;
+        }
+        synchronized (values) {
+            return (V) values.m_items[0];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key, int index) {
+        CompactMultiMap.Values values = m_map.get(key);
+        if (values == null) {
+            return null;
+        }
+        synchronized (values) {
+            return (V) values.get(index);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<V> getAll(K key) {
+        CompactMultiMap.Values values = m_map.get(key);
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        Object[] items;
+        synchronized (values) {
+            items = Arrays.copyOf(values.m_items, values.m_size);
+        }
+        return (List<V>) Collections.unmodifiableList(Arrays.asList(items));
+    }
+
+    public boolean remove(K key) {
+        return m_map.remove(key) != null;
+    }
+
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(m_map.keySet());
+    }
+
+    public int size() {
+        return m_map.size();
+    }
+
+    public void clear() {
+        m_map.clear();
+    }
+
+    private CompactMultiMap.Values getValues(K key) {
+        CompactMultiMap.Values values = m_map.get(key);
+        if (values == null) {
+            CompactMultiMap.Values created = new CompactMultiMap.Values();
+            values = m_map.putIfAbsent(key, created);
+            if (values == null) {
+                values = created;
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that hashes the bytes its reader consumes, so that the
+ * digest of some content is known once it has been read, without a second
+ * pass over it. Taking the digest ends the hashing: the stream cannot be
+ * read any further.
+ */
+public class DigestingInputStream extends FilterInputStream {
+	final private StreamingDigest	m_digest;
+	private long					m_count = 0;
+	private String					m_hex;
+
+	public DigestingInputStream(InputStream in, String algorithm) {
+		super(in);
+		m_digest = StreamingDigest.create(algorithm);
+	}
+
+	public long getCount() {
+		return m_count;
+	}
+
+	/**
+	 * Returns the digest of the bytes read so far, in lower case hex. The
+	 * first call ends the hashing; later calls return the same digest.
+	 */
+	public String getDigest() {
+		if (m_hex == null) {
+			m_hex = m_digest.toHex();
+		}
+		return m_hex;
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkHashing();
+		int b = super.read();
+		if (b >= 0) {
+			m_digest.update(b);
+			m_count++;
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkHashing();
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			m_digest.update(b, off, n);
+			m_count += n;
+		}
+		return n;
+	}
+
+	/**
+	 * Skipped bytes are read, so that they are part of the digest.
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		if (n <= 0) {
+			return 0;
+		}
+		byte[] buffer = new byte[(int) Math.min(n, 8192)];
+		long skipped = 0;
+		while (skipped < n) {
+			int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+			if (read < 0) {
+				break;
+			}
+			skipped += read;
+		}
+		return skipped;
+	}
+
+	/**
+	 * Re-reading bytes would hash them twice, so marks are not supported.
+	 */
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void mark(int readlimit) {
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	private void checkHashing() {
+		if (m_hex != null) {
+			throw new IllegalStateException("The digest has been taken");
+		}
+	}
+}
@@ -29,7 +29,8 @@ import org.apache.commons.lang.StringUtils;
 
 /**
  * A utility class for encapsulating a Javascript object that can
- * then be pretty-printed out through an IndentWriter.
+ * then be pretty-printed out through an IndentWriter. For large outputs
+ * use a {@link JsonWriter}, which streams values without building a tree.
  */
 public class JSObject extends Properties {
     private static final long serialVersionUID = 5864375136126385719L;
@@ -0,0 +1,351 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A streaming JSON generator. Values are escaped straight into an internal
+ * character buffer which is handed to the underlying writer in large chunks,
+ * so no intermediate object tree or per-value strings are ever built.
+ * <p>
+ * In the default (pretty) mode the output is indented with tabs, one member
+ * per line; in compact mode no whitespace at all is emitted.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class JsonWriter {
+    final static private int s_bufferSize = 8192;
+    final static private char[] s_hex = "0123456789abcdef".toCharArray();
+
+    final static private byte CONTEXT_TOP = 0;
+    final static private byte CONTEXT_OBJECT = 1;
+    final static private byte CONTEXT_ARRAY = 2;
+
+    private Writer      m_writer;
+    private boolean     m_compact;
+    private char[]      m_buffer = new char[s_bufferSize];
+    private int         m_position = 0;
+
+    private byte[]      m_contexts = new byte[16];
+    private boolean[]   m_empty = new boolean[16];
+    private int         m_depth = 0;
+    private boolean     m_afterKey = false;
+
+    public JsonWriter(Writer writer) {
+        this(writer, false);
+    }
+
+    public JsonWriter(Writer writer, boolean compact) {
+        m_writer = writer;
+        m_compact = compact;
+        m_contexts[0] = CONTEXT_TOP;
+        m_empty[0] = true;
+    }
+
+    public boolean isCompact() {
+        return m_compact;
+    }
+
+    public JsonWriter startObject() throws IOException {
+        beforeValue();
+        push(CONTEXT_OBJECT);
+        append('{');
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        pop(CONTEXT_OBJECT, '}');
+        return this;
+    }
+
+    public JsonWriter startArray() throws IOException {
+        beforeValue();
+        push(CONTEXT_ARRAY);
+        append('[');
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        pop(CONTEXT_ARRAY, ']');
+        return this;
+    }
+
+    public JsonWriter key(String name) throws IOException {
+        if (m_contexts[m_depth] != CONTEXT_OBJECT || m_afterKey) {
+            throw new IllegalStateException("A key can only be written directly inside an object");
+        }
+        separate();
+        appendString(name);
+        append(m_compact ? ":" : " : ");
+        m_afterKey = true;
+        return this;
+    }
+
+    public JsonWriter value(String s) throws IOException {
+        if (s == null) {
+            return nullValue();
+        }
+        beforeValue();
+        appendString(s);
+        return this;
+    }
+
+    /**
+     * Writes the characters of a buffer as a single string value, so that
+     * large payloads already held in a char array need not become a String.
+     */
+    public JsonWriter value(char[] chars, int offset, int length) throws IOException {
+        beforeValue();
+        append('"');
+        appendEscaped(chars, offset, length);
+        append('"');
+        return this;
+    }
+
+    public JsonWriter value(boolean b) throws IOException {
+        beforeValue();
+        append(b ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter value(long l) throws IOException {
+        beforeValue();
+        append(Long.toString(l));
+        return this;
+    }
+
+    public JsonWriter value(double d) throws IOException {
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            return nullValue();
+        }
+        beforeValue();
+        append(Double.toString(d));
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        append("null");
+        return this;
+    }
+
+    /**
+     * Writes an arbitrary object: strings, booleans, numbers, maps (including
+     * {@link JSObject}s) and collections are mapped onto their JSON equivalents,
+     * anything else is written as the string form of the object.
+     */
+    public JsonWriter value(Object o) throws IOException {
+        if (o == null) {
+            nullValue();
+        } else if (o instanceof String) {
+            value((String) o);
+        } else if (o instanceof Boolean) {
+            value(((Boolean) o).booleanValue());
+        } else if (o instanceof Integer || o instanceof Long || o instanceof Short || o instanceof Byte) {
+            value(((Number) o).longValue());
+        } else if (o instanceof Number) {
+            value(((Number) o).doubleValue());
+        } else if (o instanceof Map) {
+            startObject();
+            for (Object entry : ((Map<?, ?>) o).entrySet()) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) entry;
+                key(String.valueOf(e.getKey()));
+                value(e.getValue());
+            }
+            endObject();
+        } else if (o instanceof Collection) {
+            startArray();
+            Iterator<?> i = ((Collection<?>) o).iterator();
+            while (i.hasNext()) {
+                value(i.next());
+            }
+            endArray();
+        } else {
+            value(o.toString());
+        }
+        return this;
+    }
+
+    /**
+     * Writes raw text into the output without escaping or separators, e.g.
+     * for a <code>var x = </code> prefix or a JSONP callback wrapper.
+     */
+    public JsonWriter raw(String s) throws IOException {
+        append(s);
+        return this;
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        m_writer.flush();
+    }
+
+    public void close() throws IOException {
+        flushBuffer();
+        m_writer.close();
+    }
+
+    private void push(byte context) {
+        m_depth++;
+        if (m_depth == m_contexts.length) {
+            byte[] contexts = new byte[m_depth * 2];
+            boolean[] empty = new boolean[m_depth * 2];
+            System.arraycopy(m_contexts, 0, contexts, 0, m_depth);
+            System.arraycopy(m_empty, 0, empty, 0, m_depth);
+            m_contexts = contexts;
+            m_empty = empty;
+        }
+        m_contexts[m_depth] = context;
+        m_empty[m_depth] = true;
+    }
+
+    private void pop(byte context, char close) throws IOException {
+        if (m_contexts[m_depth] != context || m_afterKey) {
+            throw new IllegalStateException("Mismatched end of " + (context == CONTEXT_OBJECT ? "object" : "array"));
+        }
+        boolean empty = m_empty[m_depth];
+        m_depth--;
+        if (!empty) {
+            newline();
+        }
+        append(close);
+    }
+
+    private void beforeValue() throws IOException {
+        if (m_afterKey) {
+            m_afterKey = false;
+        } else if (m_contexts[m_depth] == CONTEXT_OBJECT) {
+            throw new IllegalStateException("A value inside an object must be preceded by a key");
+        } else {
+            separate();
+        }
+    }
+
+    private void separate() throws IOException {
+        if (m_depth == 0) {
+            return;
+        }
+        if (m_empty[m_depth]) {
+            m_empty[m_depth] = false;
+        } else {
+            append(',');
+        }
+        newline();
+    }
+
+    private void newline() throws IOException {
+        if (!m_compact) {
+            append('\n');
+            for (int i = 0; i < m_depth; i++) {
+                append('\t');
+            }
+        }
+    }
+
+    private void appendString(String s) throws IOException {
+        append('"');
+        int length = s.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (needsEscape(c, i > 0 ? s.charAt(i - 1) : 0)) {
+                append(s, start, i);
+                appendEscape(c);
+                start = i + 1;
+            }
+        }
+        append(s, start, length);
+        append('"');
+    }
+
+    private void appendEscaped(char[] chars, int offset, int length) throws IOException {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = chars[i];
+            if (needsEscape(c, i > offset ? chars[i - 1] : 0)) {
+                appendEscape(c);
+            } else {
+                append(c);
+            }
+        }
+    }
+
+    /*
+     * U+2028 and U+2029 are legal in JSON strings but not in Javascript ones,
+     * and "</" must not appear verbatim since our output is embedded in pages.
+     */
+    static private boolean needsEscape(char c, char previous) {
+        return c < 0x20 || c == '"' || c == '\\' || c == '\u2028' || c == '\u2029' || (c == '/' && previous == '<');
+    }
+
+    private void appendEscape(char c) throws IOException {
+        switch (c) {
+        case '"':  append('\\'); append('"'); break;
+        case '\\': append('\\'); append('\\'); break;
+        case '/':  append('\\'); append('/'); break;
+        case '\n': append('\\'); append('n'); break;
+        case '\r': append('\\'); append('r'); break;
+        case '\t': append('\\'); append('t'); break;
+        case '\b': append('\\'); append('b'); break;
+        case '\f': append('\\'); append('f'); break;
+        default:
+            append('\\');
+            append('u');
+            append(s_hex[(c >> 12) & 0xf]);
+            append(s_hex[(c >> 8) & 0xf]);
+            append(s_hex[(c >> 4) & 0xf]);
+            append(s_hex[c & 0xf]);
+        }
+    }
+
+    private void append(char c) throws IOException {
+        if (m_position == m_buffer.length) {
+            flushBuffer();
+        }
+        m_buffer[m_position++] = c;
+    }
+
+    private void append(String s) throws IOException {
+        append(s, 0, s.length());
+    }
+
+    private void append(String s, int start, int end) throws IOException {
+        while (start < end) {
+            if (m_position == m_buffer.length) {
+                flushBuffer();
+            }
+            int count = Math.min(end - start, m_buffer.length - m_position);
+            s.getChars(start, start + count, m_buffer, m_position);
+            m_position += count;
+            start += count;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (m_position > 0) {
+            m_writer.write(m_buffer, 0, m_position);
+            m_position = 0;
+        }
+    }
+}
@@ -24,7 +24,10 @@ import java.util.List;
 
 /**
  * A map from keys to a list of objects
+ * @deprecated use a typed {@link MultiMap}, such as {@link CompactMultiMap}
+ * or, when filled by several threads, {@link ConcurrentMultiMap}
  */
+@Deprecated
 @SuppressWarnings("rawtypes")
 public class ListMap extends HashMap<Object,Object> {
 	
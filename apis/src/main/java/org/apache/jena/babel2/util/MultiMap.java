@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.util;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A map from keys to lists of values, in insertion order.
+ *
+ * @see CompactMultiMap
+ * @see ConcurrentMultiMap
+ */
+public interface MultiMap<K, V> {
+    /**
+     * Appends a value to the values of a key.
+     */
+    public void put(K key, V value);
+
+    /**
+     * Appends a value to the values of a key unless it is already there.
+     * @return whether the value was added
+     */
+    public boolean putUnique(K key, V value);
+
+    public boolean contains(K key, V value);
+
+    public int count(K key);
+
+    /**
+     * Returns the first value of a key, or null if it has none.
+     */
+    public V get(K key);
+
+    public V get(K key, int index);
+
+    /**
+     * Returns the values the key has at the time of the call, or an empty
+     * list if it has none. The list cannot be modified.
+     */
+    public List<V> getAll(K key);
+
+    /**
+     * Removes a key and all its values.
+     * @return whether the key had any values
+     */
+    public boolean remove(K key);
+
+    public Set<K> keySet();
+
+    /**
+     * Returns the number of keys.
+     */
+    public int size();
+
+    public void clear();
+}
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.util;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Table-driven <code>application/x-www-form-urlencoded</code> encoding and
+ * decoding in UTF-8, producing the same output as commons-codec's
+ * <code>URLCodec</code>: letters, digits and <code>-_.*</code> are kept,
+ * spaces become <code>+</code> and every other byte is escaped as
+ * <code>%XX</code> with upper case hex digits.
+ * <p>
+ * Strings that need no escaping (or unescaping) are returned as they are.
+ */
+public final class PercentCodec {
+    final static private Charset s_utf8 = Charset.forName("UTF-8");
+
+    final static private char[] s_hex = "0123456789ABCDEF".toCharArray();
+
+    final static private boolean[] s_safe = new boolean[128];
+    final static private int[] s_hexValues = new int[128];
+    static {
+        for (int c = 'a'; c <= 'z'; c++) {
+            s_safe[c] = true;
+        }
+        for (int c = 'A'; c <= 'Z'; c++) {
+            s_safe[c] = true;
+        }
+        for (int c = '0'; c <= '9'; c++) {
+            s_safe[c] = true;
+        }
+        s_safe['-'] = true;
+        s_safe['_'] = true;
+        s_safe['.'] = true;
+        s_safe['*'] = true;
+
+        Arrays.fill(s_hexValues, -1);
+        for (int i = 0; i < 16; i++) {
+            s_hexValues[s_hex[i]] = i;
+            s_hexValues[Character.toLowerCase(s_hex[i])] = i;
+        }
+    }
+
+    private PercentCodec() {
+    }
+
+    static public String encode(String s) {
+        int length = s.length();
+        int i = 0;
+        while (i < length) {
+            char c = s.charAt(i);
+            if (c >= 128 || !s_safe[c]) {
+                break;
+            }
+            i++;
+        }
+        if (i == length) {
+            return s;
+        }
+
+        StringBuilder sb = new StringBuilder(length + 16);
+        sb.append(s, 0, i);
+        encode(s, i, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the encoded form of <code>s</code> to <code>sb</code>.
+     */
+    static public StringBuilder encode(String s, StringBuilder sb) {
+        encode(s, 0, sb);
+        return sb;
+    }
+
+    static public String decode(String s) {
+        int length = s.length();
+        int i = 0;
+        while (i < length) {
+            char c = s.charAt(i);
+            if (c == '%' || c == '+' || c >= 128) {
+                break;
+            }
+            i++;
+        }
+        if (i == length) {
+            return s;
+        }
+
+        // escapes are decoded into UTF-8 bytes, which are turned into
+        // characters once the whole string is done
+        byte[] bytes = new byte[i + (length - i) * 3];
+        int count = 0;
+        for (int j = 0; j < i; j++) {
+            bytes[count++] = (byte) s.charAt(j);
+        }
+        while (i < length) {
+            char c = s.charAt(i++);
+            if (c == '+') {
+                bytes[count++] = ' ';
+            } else if (c == '%') {
+                int high = i < length ? hexValue(s.charAt(i)) : -1;
+                int low = i + 1 < length ? hexValue(s.charAt(i + 1)) : -1;
+                if (high < 0 || low < 0) {
+                    throw new IllegalArgumentException("Invalid URL encoding in " + s);
+                }
+                bytes[count++] = (byte) ((high << 4) | low);
+                i += 2;
+            } else if (c < 128) {
+                bytes[count++] = (byte) c;
+            } else {
+                byte[] encoded = String.valueOf(c).getBytes(s_utf8);
+                if (Character.isHighSurrogate(c) && i < length) {
+                    encoded = s.substring(i - 1, i + 1).getBytes(s_utf8);
+                    i++;
+                }
+                System.arraycopy(encoded, 0, bytes, count, encoded.length);
+                count += encoded.length;
+            }
+        }
+        return new String(bytes, 0, count, s_utf8);
+    }
+
+    static private void encode(String s, int from, StringBuilder sb) {
+        int length = s.length();
+        for (int i = from; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 128) {
+                if (s_safe[c]) {
+                    sb.append(c);
+                } else if (c == ' ') {
+                    sb.append('+');
+                } else {
+                    appendEscape(sb, c);
+                }
+            } else if (c < 0x800) {
+                appendEscape(sb, 0xC0 | (c >> 6));
+                appendEscape(sb, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                appendEscape(sb, 0xF0 | (codePoint >> 18));
+                appendEscape(sb, 0x80 | ((codePoint >> 12) & 0x3F));
+                appendEscape(sb, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendEscape(sb, 0x80 | (codePoint & 0x3F));
+            } else if (c >= '\uD800' && c <= '\uDFFF') {
+                // an unpaired surrogate, which the UTF-8 encoder replaces with '?'
+                appendEscape(sb, '?');
+            } else {
+                appendEscape(sb, 0xE0 | (c >> 12));
+                appendEscape(sb, 0x80 | ((c >> 6) & 0x3F));
+                appendEscape(sb, 0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    static private void appendEscape(StringBuilder sb, int b) {
+        sb.append('%');
+        sb.append(s_hex[(b >> 4) & 0xF]);
+        sb.append(s_hex[b & 0xF]);
+    }
+
+    static private int hexValue(char c) {
+        return c < 128 ? s_hexValues[c] : -1;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jena.babel2.TripleSink;
+
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * Counts the bytes a conversion reads and the triples it emits, for
+ * reporting how far a long conversion has got. The counters are updated
+ * by the converting thread and can be read from any other.
+ * <p>
+ * A conversion's progress travels in its reader properties, see
+ * {@link #get(Properties)}, so that the code that opens the inputs can
+ * count them.
+ */
+public class Progress {
+    final static private String s_key = Progress.class.getName();
+
+    final private AtomicLong m_bytesRead = new AtomicLong();
+    final private AtomicLong m_triples = new AtomicLong();
+
+    /**
+     * Returns the progress of the conversion the given reader properties
+     * belong to, or null if nobody is watching it.
+     */
+    static public Progress get(Properties properties) {
+        Object progress = properties.get(s_key);
+        return progress instanceof Progress ? (Progress) progress : null;
+    }
+
+    static public void set(Properties properties, Progress progress) {
+        properties.put(s_key, progress);
+    }
+
+    public long getBytesRead() {
+        return m_bytesRead.get();
+    }
+
+    public long getTriples() {
+        return m_triples.get();
+    }
+
+    public void addTriples(long count) {
+        m_triples.addAndGet(count);
+    }
+
+    /**
+     * Returns a stream that counts what is read from <code>in</code>.
+     */
+    public InputStream count(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    m_bytesRead.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    m_bytesRead.addAndGet(n);
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                m_bytesRead.addAndGet(skipped);
+                return skipped;
+            }
+        };
+    }
+
+    /**
+     * Returns a sink that counts the triples passed on to <code>sink</code>.
+     */
+    public TripleSink count(final TripleSink sink) {
+        return new TripleSink() {
+            public void start() throws IOException {
+                sink.start();
+            }
+
+            public void prefix(String prefix, String uri) throws IOException {
+                sink.prefix(prefix, uri);
+            }
+
+            public void triple(Triple triple) throws IOException {
+                sink.triple(triple);
+                m_triples.incrementAndGet();
+            }
+
+            public void finish() throws IOException {
+                sink.finish();
+            }
+        };
+    }
+}
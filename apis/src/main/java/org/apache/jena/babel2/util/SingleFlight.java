@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs at most one computation per key at a time. A caller asking for a
+ * key that is already being computed waits for that computation and gets
+ * its result, or its exception, instead of computing it again. Nothing is
+ * kept once a computation ends, so this is not a cache: a caller arriving
+ * after the result was handed out computes it anew.
+ */
+public class SingleFlight<K, V> {
+    final private ConcurrentHashMap<K, FutureTask<V>> m_flights = new ConcurrentHashMap<K, FutureTask<V>>();
+
+    /**
+     * Returns the result of <code>work</code>, or of the computation in
+     * flight for the same key.
+     */
+    public V execute(K key, Callable<V> work) throws Exception {
+        return execute(key, work, -1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Like {@link #execute(Object, Callable)}, except that a caller joining
+     * a computation in flight waits for it at most <code>timeout</code>,
+     * or for as long as it takes if that is negative, and then gets a
+     * <code>TimeoutException</code> while the computation goes on. The
+     * caller running the computation is not bound by the timeout.
+     */
+    public V execute(K key, Callable<V> work, long timeout, TimeUnit unit) throws Exception {
+        FutureTask<V> task = new FutureTask<V>(work);
+        FutureTask<V> flight = m_flights.putIfAbsent(key, task);
+        if (flight == null) {
+            flight = task;
+            try {
+                task.run();
+            } finally {
+                m_flights.remove(key, task);
+            }
+        }
+
+        try {
+            return timeout < 0 || flight.isDone() ? flight.get() : flight.get(timeout, unit);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns how many computations are running.
+     */
+    public int getInFlightCount() {
+        return m_flights.size();
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * A hash computed incrementally over a stream of bytes. {@link #MD5} and
+ * {@link #SHA1} are the usual message digests; {@link #CRC32} and
+ * {@link #FNV1A64} are much cheaper and meant for cache keys and dedupe,
+ * where collisions are not a security concern.
+ * <p>
+ * A digest is not thread-safe. Use {@link #create(String)} for a new one.
+ */
+public abstract class StreamingDigest {
+	final static public String MD5 = "MD5";
+	final static public String SHA1 = "SHA-1";
+	final static public String CRC32 = "CRC32";
+	final static public String FNV1A64 = "FNV-1a-64";
+
+	final static private char[] s_hex = "0123456789abcdef".toCharArray();
+
+	final static private ThreadLocal<byte[]> s_buffers = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[8192];
+		}
+	};
+
+	/**
+	 * Creates a digest for the given algorithm: one of the constants of
+	 * this class or any algorithm known to <code>MessageDigest</code>.
+	 */
+	static public StreamingDigest create(String algorithm) {
+		if (CRC32.equals(algorithm)) {
+			return new CRC32Digest();
+		} else if (FNV1A64.equals(algorithm)) {
+			return new FNVDigest();
+		}
+		try {
+			return new MessageDigestWrapper(MessageDigest.getInstance(algorithm));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalArgumentException("Unknown digest algorithm " + algorithm, e);
+		}
+	}
+
+	/**
+	 * Reads <code>in</code> to its end, without closing it, and returns
+	 * its digest as a lower case hex string.
+	 */
+	static public String digest(InputStream in, String algorithm) throws IOException {
+		StreamingDigest digest = create(algorithm);
+		byte[] buffer = s_buffers.get();
+		int n;
+		while ((n = in.read(buffer)) >= 0) {
+			digest.update(buffer, 0, n);
+		}
+		return digest.toHex();
+	}
+
+	static public String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = s_hex[(bytes[i] >> 4) & 0xf];
+			chars[2 * i + 1] = s_hex[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+
+	public abstract void update(byte[] bytes, int offset, int length);
+
+	public void update(int b) {
+		update(new byte[] { (byte) b }, 0, 1);
+	}
+
+	/**
+	 * Returns the digest of everything seen so far and resets this digest.
+	 */
+	public abstract byte[] digest();
+
+	public String toHex() {
+		return toHex(digest());
+	}
+
+	static private class MessageDigestWrapper extends StreamingDigest {
+		final private MessageDigest m_digest;
+
+		MessageDigestWrapper(MessageDigest digest) {
+			m_digest = digest;
+		}
+
+		@Override
+		public void update(byte[] bytes, int offset, int length) {
+			m_digest.update(bytes, offset, length);
+		}
+
+		@Override
+		public void update(int b) {
+			m_digest.update((byte) b);
+		}
+
+		@Override
+		public byte[] digest() {
+			return m_digest.digest();
+		}
+	}
+
+	static private class CRC32Digest extends StreamingDigest {
+		final private CRC32 m_crc = new CRC32();
+
+		@Override
+		public void update(byte[] bytes, int offset, int length) {
+			m_crc.update(bytes, offset, length);
+		}
+
+		@Override
+		public void update(int b) {
+			m_crc.update(b);
+		}
+
+		@Override
+		public byte[] digest() {
+			long value = m_crc.getValue();
+			m_crc.reset();
+			return new byte[] { (byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value };
+		}
+	}
+
+	static private class FNVDigest extends StreamingDigest {
+		final static private long s_offsetBasis = 0xcbf29ce484222325L;
+		final static private long s_prime = 0x100000001b3L;
+
+		private long m_hash = s_offsetBasis;
+
+		@Override
+		public void update(byte[] bytes, int offset, int length) {
+			long hash = m_hash;
+			for (int i = offset; i < offset + length; i++) {
+				hash ^= bytes[i] & 0xff;
+				hash *= s_prime;
+			}
+			m_hash = hash;
+		}
+
+		@Override
+		public void update(int b) {
+			m_hash = (m_hash ^ (b & 0xff)) * s_prime;
+		}
+
+		@Override
+		public byte[] digest() {
+			long value = m_hash;
+			m_hash = s_offsetBasis;
+			byte[] bytes = new byte[8];
+			for (int i = 7; i >= 0; i--) {
+				bytes[i] = (byte) value;
+				value >>>= 8;
+			}
+			return bytes;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+
+/**
+ * Caches the URIs, resources and properties a conversion mints, so that
+ * repeated types, column names and references share one instance (and one
+ * node) instead of allocating a new one every time.
+ * <p>
+ * A cache lives as long as the conversion's <code>Properties</code>; use
+ * {@link #get(Properties)} so that all readers of a conversion share it.
+ * Like a conversion, a cache is not meant to be used by several threads.
+ */
+public class TermCache {
+    final static private String s_key = TermCache.class.getName();
+
+    // past this many entries a map stops growing and terms are just created
+    final static private int s_maxEntries = 100000;
+
+    final private Map<String, String>                   m_strings = new HashMap<String, String>();
+    final private Map<String, Resource>                 m_resources = new HashMap<String, Resource>();
+    final private Map<String, Map<String, Resource>>    m_minted = new HashMap<String, Map<String, Resource>>();
+    final private Map<String, Map<String, Property>>    m_properties = new HashMap<String, Map<String, Property>>();
+    final private Map<String, Map<String, Property>>    m_mintedProperties = new HashMap<String, Map<String, Property>>();
+    final private StringBuilder                         m_uri = new StringBuilder();
+
+    /**
+     * Returns the cache of the conversion the given properties belong to,
+     * creating it on first use.
+     */
+    static public TermCache get(Properties properties) {
+        Object cache = properties.get(s_key);
+        if (!(cache instanceof TermCache)) {
+            cache = new TermCache();
+            properties.put(s_key, cache);
+        }
+        return (TermCache) cache;
+    }
+
+    /**
+     * Returns a canonical instance of the given string.
+     */
+    public String intern(String s) {
+        if (s == null) {
+            return null;
+        }
+        String interned = m_strings.get(s);
+        if (interned == null) {
+            interned = s;
+            if (m_strings.size() < s_maxEntries) {
+                m_strings.put(s, s);
+            }
+        }
+        return interned;
+    }
+
+    public Resource createResource(String uri) {
+        Resource resource = m_resources.get(uri);
+        if (resource == null) {
+            resource = ResourceFactory.createResource(uri);
+            if (m_resources.size() < s_maxEntries) {
+                m_resources.put(uri, resource);
+            }
+        }
+        return resource;
+    }
+
+    public Node createNode(String uri) {
+        return createResource(uri).asNode();
+    }
+
+    /**
+     * Returns the resource named by appending the URL-encoded form of
+     * <code>name</code> to <code>namespace</code>.
+     */
+    public Resource mintResource(String namespace, String name) {
+        Map<String, Resource> resources = m_minted.get(namespace);
+        if (resources == null) {
+            resources = new HashMap<String, Resource>();
+            m_minted.put(intern(namespace), resources);
+        }
+
+        Resource resource = resources.get(name);
+        if (resource == null) {
+            m_uri.setLength(0);
+            m_uri.append(namespace);
+            resource = createResource(PercentCodec.encode(name, m_uri).toString());
+            if (resources.size() < s_maxEntries) {
+                resources.put(name, resource);
+            }
+        }
+        return resource;
+    }
+
+    /**
+     * Returns the property named by appending <code>localName</code>, as is,
+     * to <code>namespace</code>.
+     */
+    public Property createProperty(String namespace, String localName) {
+        return property(m_properties, namespace, localName, false);
+    }
+
+    /**
+     * Returns the property named by appending the URL-encoded form of
+     * <code>name</code> to <code>namespace</code>.
+     */
+    public Property mintProperty(String namespace, String name) {
+        return property(m_mintedProperties, namespace, name, true);
+    }
+
+    private Property property(Map<String, Map<String, Property>> cache, String namespace, String name, boolean encode) {
+        Map<String, Property> properties = cache.get(namespace);
+        if (properties == null) {
+            properties = new HashMap<String, Property>();
+            cache.put(intern(namespace), properties);
+        }
+
+        Property property = properties.get(name);
+        if (property == null) {
+            property = ResourceFactory.createProperty(intern(namespace), intern(encode ? PercentCodec.encode(name) : name));
+            if (properties.size() < s_maxEntries) {
+                properties.put(name, property);
+            }
+        }
+        return property;
+    }
+}
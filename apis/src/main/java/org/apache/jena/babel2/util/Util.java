@@ -20,9 +20,6 @@ package org.apache.jena.babel2.util;
 
 import java.io.*;
 import java.util.*;
-import java.security.*;
-
-import org.apache.commons.codec.net.URLCodec;
 
 public final class Util {
 
@@ -39,21 +36,17 @@ public final class Util {
 	
 	/**
 	 * Computes the MD5 message digest of an <code>InputStream</code>
-	 * and returns it as a hexidecimal String. The caller is responsible
+	 * and returns it as a hexidecimal String. The stream is hashed as it
+	 * is read, in blocks. The caller is responsible
 	 * for calling the <code>close()</code> method of
 	 * <code>message</code>. 
 	 * @return A <code>String</code> that is 32
 	 * characters long consisting of digits and the lower case alphabetic characters <code>a-f</code>.
+	 * @see StreamingDigest
 	 */
 	public static String computeMD5(InputStream message)
 		throws IOException {
-		int ch;
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		while ((ch = message.read()) != -1) {
-			out.write(ch);
-		}
-		out.close();
-		return computeMD5(out.toByteArray());
+		return StreamingDigest.digest(message, StreamingDigest.MD5);
 	}
 
 	/**
@@ -79,22 +72,23 @@ public final class Util {
 	 * characters <code>a-f</code> are lower-case.
 	 */
 	public static String computeMD5(byte[] message) {
-		try {
-			MessageDigest md5 = MessageDigest.getInstance("MD5");
-			md5.reset();
-			md5.update(message);
-			byte[] digest = md5.digest();
-
-			StringBuffer sb = new StringBuffer();
-			for (int i = 0; i < digest.length; i++) {
-				if ((0xff & digest[i]) < 0x10)
-					sb.append('0');
-				sb.append(Integer.toHexString(0xff & digest[i]));
+		StreamingDigest md5 = StreamingDigest.create(StreamingDigest.MD5);
+		md5.update(message, 0, message.length);
+		return md5.toHex();
+	}
+
+	/**
+	 * Whether the exception, or any exception that caused it, is of the
+	 * given class, for exceptions that readers and graphs may wrap.
+	 */
+	public static boolean hasCause(Throwable e, Class<? extends Throwable> c) {
+		while (e != null) {
+			if (c.isInstance(e)) {
+				return true;
 			}
-			return (sb.toString());
-		} catch (NoSuchAlgorithmException e) {
-			return null;
-		} // won't happen
+			e = e.getCause();
+		}
+		return false;
 	}
 
 	//////////////////////////////////////////////////////////////////////
@@ -103,25 +97,27 @@ public final class Util {
 	 * section 2.2 of RFC 2141,
 	 * <a href="http://www.ietf.org/rfc/rfc2141.txt">URN Syntax</a> */
 	public static String toURI(String input) {
+		int len = input.length();
+		int i = 0;
+		while (i < len && isURIChar(input.charAt(i))) {
+			i++;
+		}
+		if (i == len) {
+			return input;
+		}
+
 		try {
 			byte[] bytes = input.getBytes("UTF8");
-			StringBuffer sb = new StringBuffer(2 * input.length());
+			StringBuilder sb = new StringBuilder(2 * input.length());
 
-			for (int i = 0; i < bytes.length; i++) {
+			for (i = 0; i < bytes.length; i++) {
 				byte c = bytes[i];
-				if ((('a' <= c) && (c <= 'z'))
-					|| (('@' <= c) && (c <= 'Z'))
-					|| (('0' <= c) && (c <= ';'))
-					|| (('\'' <= c) && (c <= '.'))
-					|| (c == '$')
-					|| (c == '=')
-					|| (c == '_')
-					|| (c == '!')) {
+				if (c >= 0 && isURIChar((char) c)) {
 					sb.append((char) c);
 				} else {
-					sb.append(((0xff & bytes[i]) < 0x10) ? "%0" : "%");
-					sb.append(
-						Integer.toHexString(0xff & bytes[i]).toUpperCase());
+					sb.append('%');
+					sb.append(s_hexDigits.charAt((c >> 4) & 0xf));
+					sb.append(s_hexDigits.charAt(c & 0xf));
 				}
 			}
 			return sb.toString();
@@ -130,6 +126,19 @@ public final class Util {
 		} // won't happen
 	}
 
+	private static final String s_hexDigits = "0123456789ABCDEF";
+
+	private static boolean isURIChar(char c) {
+		return (('a' <= c) && (c <= 'z'))
+			|| (('@' <= c) && (c <= 'Z'))
+			|| (('0' <= c) && (c <= ';'))
+			|| (('\'' <= c) && (c <= '.'))
+			|| (c == '$')
+			|| (c == '=')
+			|| (c == '_')
+			|| (c == '!');
+	}
+
 	//////////////////////////////////////////////////////////////////////
 	/** Converts a string into a canonical form for the purpose
 	 * embedding into RDF Literals.  Permissible characters are valid
@@ -168,22 +177,20 @@ public final class Util {
 		return sb.toString();
 	}
 
-    final static String s_urlEncoding = "UTF-8";
-    final static URLCodec s_codec = new URLCodec();
-    
+    /**
+     * Decodes a UTF-8 <code>application/x-www-form-urlencoded</code> string.
+     * @see PercentCodec
+     */
     final static public String decode(String s) {
-        try {
-            return s_codec.decode(s, s_urlEncoding);
-        } catch (Exception e) {
-            throw new RuntimeException("Exception decoding " + s + " with " + s_urlEncoding + " encoding.");
-        }
+        return PercentCodec.decode(s);
     }
+    
+    /**
+     * Encodes a string as UTF-8 <code>application/x-www-form-urlencoded</code>.
+     * @see PercentCodec
+     */
     final static public String encode(String s) {
-        try {
-            return s_codec.encode(s, s_urlEncoding);
-        } catch (Exception e) {
-            throw new RuntimeException("Exception decoding " + s + " with " + s_urlEncoding + " encoding.");
-        }
+        return PercentCodec.encode(s);
     }
 }
 
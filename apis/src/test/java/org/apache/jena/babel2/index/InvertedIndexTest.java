@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InvertedIndexTest {
+	private File m_file;
+
+	@Before
+	public void setUp() throws IOException {
+		m_file = File.createTempFile("babel-index", ".bin");
+	}
+
+	@After
+	public void tearDown() {
+		m_file.delete();
+	}
+
+	@Test
+	public void testRandomRoundTrip() throws IOException {
+		String[] words = { "apple", "apply", "banana", "Band", "cat", "été" };
+		InvertedIndexBuilder builder = new InvertedIndexBuilder();
+		Map<String, List<String>> expected = new TreeMap<String, List<String>>();
+		Map<String, Integer> positions = new HashMap<String, Integer>();
+
+		Random random = new Random(3);
+		for (int i = 0; i < 3000; i++) {
+			String subject = "http://x/" + random.nextInt(300);
+			String predicate = "http://p/" + random.nextInt(4);
+			String word1 = words[random.nextInt(words.length)];
+			String word2 = words[random.nextInt(words.length)];
+			builder.add(subject, predicate, word1 + ", " + word2);
+
+			for (String word : new String[] { word1, word2 }) {
+				String field = subject + " " + predicate;
+				Integer position = positions.get(field);
+				position = position == null ? 0 : position;
+				positions.put(field, position + 1);
+
+				String term = word.toLowerCase();
+				if (!expected.containsKey(term)) {
+					expected.put(term, new ArrayList<String>());
+				}
+				expected.get(term).add(field + " " + position);
+			}
+		}
+
+		InvertedIndex index = write(builder);
+		assertEquals(expected.size(), index.getTermCount());
+		assertEquals(300, index.getSubjectCount());
+		for (Map.Entry<String, List<String>> entry : expected.entrySet()) {
+			List<String> actual = toStrings(index.lookup(entry.getKey()));
+			Collections.sort(actual);
+			Collections.sort(entry.getValue());
+			assertEquals(entry.getKey(), entry.getValue(), actual);
+		}
+	}
+
+	@Test
+	public void testNormalizeIgnoresDefaultLocale() {
+		// Turkish lower-cases I to a dotless i
+		Locale locale = Locale.getDefault();
+		Locale.setDefault(new Locale("tr", "TR"));
+		try {
+			assertEquals("title", InvertedIndexBuilder.normalize("TITLE"));
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	@Test
+	public void testDeltaResets() throws IOException {
+		InvertedIndexBuilder builder = new InvertedIndexBuilder();
+		builder.add("A", "p1", "x y x y x");	// A p1 0, 2, 4
+		builder.add("A", "p2", "x");			// new predicate: position written as is
+		builder.add("B", "p2", "y");			// no x: the delta from A to C is 2
+		builder.add("C", "p1", "y x");			// new subject, same predicate, lower position
+		builder.add("A", "p1", "x");			// out of order: A p1 5
+
+		InvertedIndex index = write(builder);
+
+		List<String> expected = new ArrayList<String>();
+		expected.add("A p1 0");
+		expected.add("A p1 2");
+		expected.add("A p1 4");
+		expected.add("A p1 5");
+		expected.add("A p2 0");
+		expected.add("C p1 1");
+		assertEquals(expected, toStrings(index.lookup("x")));
+
+		expected.clear();
+		expected.add("A p1 1");
+		expected.add("A p1 3");
+		expected.add("B p2 0");
+		expected.add("C p1 0");
+		assertEquals(expected, toStrings(index.lookup("y")));
+	}
+
+	@Test
+	public void testSharedPrefixes() throws IOException {
+		String[] terms = { "b", "ban", "band", "bandana", "bandanas", "bane", "c", "été", "étés", "ü" };
+		InvertedIndexBuilder builder = new InvertedIndexBuilder();
+		for (int i = 0; i < terms.length; i++) {
+			builder.add("s" + i, "p", terms[i]);
+		}
+
+		InvertedIndex index = write(builder);
+		assertEquals(terms.length, index.getTermCount());
+		for (int i = 0; i < terms.length; i++) {
+			List<String> expected = Collections.singletonList("s" + i + " p 0");
+			assertEquals(terms[i], expected, toStrings(index.lookup(terms[i])));
+			assertEquals(terms[i], expected, toStrings(index.lookup(terms[i].toUpperCase())));
+		}
+		assertTrue(index.lookup("ba").isEmpty());
+		assertTrue(index.lookup("bandan").isEmpty());
+		assertTrue(index.lookup("zzz").isEmpty());
+		assertTrue(index.lookupSubjects("a").isEmpty());
+	}
+
+	private InvertedIndex write(InvertedIndexBuilder builder) throws IOException {
+		OutputStream out = new FileOutputStream(m_file);
+		try {
+			builder.write(out);
+		} finally {
+			out.close();
+		}
+		return InvertedIndex.open(m_file);
+	}
+
+	static private List<String> toStrings(List<InvertedIndex.Posting> postings) {
+		List<String> strings = new ArrayList<String>();
+		for (InvertedIndex.Posting posting : postings) {
+			strings.add(posting.toString());
+		}
+		return strings;
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.net.URLCodec;
+import org.junit.Test;
+
+/**
+ * Checks that {@link PercentCodec} encodes and decodes exactly as
+ * commons-codec's <code>URLCodec</code>, which it replaced for minting
+ * URIs, so that published URIs stay the same.
+ */
+public class PercentCodecTest {
+    final private URLCodec m_codec = new URLCodec();
+
+    @Test
+    public void testRandomStrings() throws Exception {
+        // safe and unsafe ASCII, two and three byte characters, a
+        // surrogate pair and unpaired surrogates
+        char[] pool = "aZ09-_.*~ +%/?&=#é中😀𐀀".toCharArray();
+        Random random = new Random(1);
+        for (int n = 0; n < 200000; n++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int i = 0; i < length; i++) {
+                sb.append(pool[random.nextInt(pool.length)]);
+            }
+            String s = sb.toString();
+
+            String encoded = m_codec.encode(s, "UTF-8");
+            assertEquals(s, encoded, PercentCodec.encode(s));
+            assertEquals(encoded, m_codec.decode(encoded, "UTF-8"), PercentCodec.decode(encoded));
+        }
+    }
+
+    @Test
+    public void testUnpairedSurrogates() throws Exception {
+        String[] strings = { "\ud800", "\udc00", "a\ud800b", "a\udc00\ud800b", "\ud800𐀀", "😀\ude00" };
+        for (String s : strings) {
+            assertEquals(m_codec.encode(s, "UTF-8"), PercentCodec.encode(s));
+        }
+    }
+
+    @Test
+    public void testPlusAndStar() throws Exception {
+        assertEquals("a%2Bb*c+d", PercentCodec.encode("a+b*c d"));
+        assertEquals(m_codec.encode("a+b*c d", "UTF-8"), PercentCodec.encode("a+b*c d"));
+
+        assertEquals("a+b c*", PercentCodec.decode("a%2Bb+c%2a"));
+        assertEquals(m_codec.decode("a%2Bb+c%2a", "UTF-8"), PercentCodec.decode("a%2Bb+c%2a"));
+    }
+
+    @Test
+    public void testUnchangedStringsAreReturned() {
+        String s = "plain-text_1.0*";
+        assertSame(s, PercentCodec.encode(s));
+        assertSame(s, PercentCodec.decode(s));
+    }
+
+    @Test
+    public void testMalformedEscapes() throws Exception {
+        String[] strings = { "%", "a%", "%2", "a%2", "%zz", "%g1", "%1g", "100%" };
+        for (String s : strings) {
+            try {
+                m_codec.decode(s, "UTF-8");
+                fail("URLCodec accepted " + s);
+            } catch (DecoderException e) {
+                // expected
+            }
+            try {
+                PercentCodec.decode(s);
+                fail("PercentCodec accepted " + s);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SingleFlightTest {
+    final private SingleFlight<String, String> m_flights = new SingleFlight<String, String>();
+
+    @Test
+    public void testFollowerTimesOut() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        Leader leader = new Leader(started, release, runs);
+        leader.start();
+        started.await();
+
+        try {
+            m_flights.execute("key", new Counting(runs), 50, TimeUnit.MILLISECONDS);
+            fail("The follower did not time out");
+        } catch (TimeoutException e) {
+            // expected
+        } finally {
+            release.countDown();
+        }
+        leader.join();
+
+        // the computation went on for its own caller
+        assertEquals("result", leader.m_result);
+        assertEquals(1, runs.get());
+    }
+
+    private class Leader extends Thread {
+        final private CountDownLatch m_started;
+        final private CountDownLatch m_release;
+        final private AtomicInteger m_runs;
+        volatile String m_result;
+
+        Leader(CountDownLatch started, CountDownLatch release, AtomicInteger runs) {
+            m_started = started;
+            m_release = release;
+            m_runs = runs;
+        }
+
+        @Override
+        public void run() {
+            try {
+                m_result = m_flights.execute("key", new Callable<String>() {
+                    public String call() throws Exception {
+                        m_runs.incrementAndGet();
+                        m_started.countDown();
+                        m_release.await();
+                        return "result";
+                    }
+                });
+            } catch (Exception e) {
+                m_result = e.toString();
+            }
+        }
+    }
+
+    static private class Counting implements Callable<String> {
+        final private AtomicInteger m_runs;
+
+        Counting(AtomicInteger runs) {
+            m_runs = runs;
+        }
+
+        public String call() {
+            m_runs.incrementAndGet();
+            return "again";
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class UtilTest {
+
+	@Test
+	public void testComputeMD5KnownValues() throws IOException {
+		assertEquals("d41d8cd98f00b204e9800998ecf8427e", Util.computeMD5(""));
+		assertEquals("900150983cd24fb0d6963f7d28e17f72", Util.computeMD5("abc"));
+		assertEquals("900150983cd24fb0d6963f7d28e17f72",
+			Util.computeMD5(new ByteArrayInputStream(new byte[] { 'a', 'b', 'c' })));
+	}
+
+	@Test
+	public void testComputeMD5StreamMatchesBytes() throws IOException {
+		// sizes around the 8K block the stream is hashed in
+		int[] sizes = { 0, 1, 8191, 8192, 8193, 3 * 8192 + 17, 100000 };
+		Random random = new Random(1);
+		for (int size : sizes) {
+			byte[] bytes = new byte[size];
+			random.nextBytes(bytes);
+
+			String expected = Util.computeMD5(bytes);
+			assertEquals(expected, Util.computeMD5(new ByteArrayInputStream(bytes)));
+			assertEquals(expected, Util.computeMD5(new TrickleInputStream(new ByteArrayInputStream(bytes))));
+		}
+	}
+
+	@Test
+	public void testHasCause() {
+		Exception wrapped = new RuntimeException(new IOException(new CancelledException("stop")));
+		assertTrue(Util.hasCause(wrapped, CancelledException.class));
+		assertTrue(Util.hasCause(wrapped, IOException.class));
+		assertFalse(Util.hasCause(wrapped, IllegalStateException.class));
+		assertFalse(Util.hasCause(null, Exception.class));
+	}
+
+	@Test
+	public void testDigestingInputStream() throws IOException {
+		byte[] bytes = new byte[20000];
+		new Random(2).nextBytes(bytes);
+
+		DigestingInputStream in = new DigestingInputStream(
+			new TrickleInputStream(new ByteArrayInputStream(bytes)), StreamingDigest.MD5);
+		byte[] buffer = new byte[100];
+		assertEquals(bytes[0] & 0xff, in.read());
+		assertEquals(7, in.read(buffer));
+		assertEquals(5000, in.skip(5000));	// skipped bytes are hashed too
+		while (in.read(buffer, 0, buffer.length) >= 0) {
+		}
+
+		assertEquals(bytes.length, in.getCount());
+		assertEquals(Util.computeMD5(bytes), in.getDigest());
+		assertEquals(Util.computeMD5(bytes), in.getDigest());
+		try {
+			in.read();
+			fail("Read after the digest was taken");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testDigestingInputStreamIgnoresMarks() throws IOException {
+		byte[] bytes = "some content to hash".getBytes("UTF-8");
+		DigestingInputStream in = new DigestingInputStream(new ByteArrayInputStream(bytes), StreamingDigest.SHA1);
+
+		assertFalse(in.markSupported());
+		in.mark(100);
+		in.read(new byte[4]);
+		try {
+			in.reset();
+			fail("Reset a stream that hashes what it reads");
+		} catch (IOException e) {
+			// expected
+		}
+		while (in.read() >= 0) {
+		}
+
+		assertEquals(StreamingDigest.digest(new ByteArrayInputStream(bytes), StreamingDigest.SHA1), in.getDigest());
+	}
+
+	/**
+	 * Returns at most a few bytes per read, as sockets do.
+	 */
+	static private class TrickleInputStream extends FilterInputStream {
+		TrickleInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return super.read(b, off, Math.min(len, 7));
+		}
+	}
+}
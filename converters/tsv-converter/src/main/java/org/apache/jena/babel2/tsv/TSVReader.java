@@ -23,42 +23,46 @@ import java.io.LineNumberReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 
-import org.apache.commons.codec.net.URLCodec;
 import org.apache.commons.lang.NotImplementedException;
 import org.apache.commons.lang.StringUtils;
-import org.apache.jena.babel2.BabelReader;
+import org.apache.jena.babel2.Capabilities;
+import org.apache.jena.babel2.DescribedReader;
 import org.apache.jena.babel2.GenericType;
 import org.apache.jena.babel2.SemanticType;
 import org.apache.jena.babel2.SerializationFormat;
+import org.apache.jena.babel2.sink.Projection;
+import org.apache.jena.babel2.util.Cancellation;
+import org.apache.jena.babel2.util.CompactMultiMap;
+import org.apache.jena.babel2.util.MultiMap;
+import org.apache.jena.babel2.util.TermCache;
 
 import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
-import com.hp.hpl.jena.rdf.model.ResourceFactory;
 import com.hp.hpl.jena.vocabulary.RDF;
 import com.hp.hpl.jena.vocabulary.RDFS;
 
-public class TSVReader implements BabelReader {
+public class TSVReader implements DescribedReader {
     static class Column {
         String      m_name;
         Property    m_uri;
         boolean     m_singleValue = false;
         ValueType   m_valueType = ValueType.Text;
+        boolean     m_dropped = false;
     }
     static class Item {
         String      m_label;
         String      m_id;
         Resource    m_type;
         Resource    m_uri;
-        Map<Column, List<String>>   m_properties = new HashMap<Column, List<String>>();
+        MultiMap<Column, String>    m_properties = new CompactMultiMap<Column, String>();
     }
     static enum ValueType {
         Item,
@@ -85,6 +89,14 @@ public class TSVReader implements BabelReader {
         return TSVFormat.s_singleton;
     }
 
+    /**
+     * The rows are all read before any statement is added, and then the
+     * statements about each item are added together.
+     */
+    public Capabilities getReaderCapabilities(Properties properties) {
+        return new Capabilities(false, Capabilities.Ordering.SUBJECT_GROUPED, false);
+    }
+    
     public boolean takesReader() {
         return true;
     }
@@ -95,6 +107,9 @@ public class TSVReader implements BabelReader {
 
     public void read(Reader reader, Model model, Properties properties, Locale locale) throws Exception {
         String              namespace = properties.getProperty("namespace");
+        TermCache           terms = TermCache.get(properties);
+        Projection          projection = Projection.get(properties);
+        Cancellation        cancellation = Cancellation.get(properties);
         List<Column>        columns = new ArrayList<Column>();
         int                 uriColumn = -1;
         int                 idColumn = -1;
@@ -160,7 +175,10 @@ public class TSVReader implements BabelReader {
                             column.m_name = "id";
                             idColumn = i;
                         } else {
-                            column.m_uri = ResourceFactory.createProperty(namespace, encode(column.m_name));
+                            column.m_uri = terms.mintProperty(namespace, column.m_name);
+                            
+                            // the values of a column the projection drops are never stored
+                            column.m_dropped = projection != null && !projection.acceptsPredicate(column.m_uri.getURI());
                         }
                     }
                     columns.add(column);
@@ -185,31 +203,51 @@ public class TSVReader implements BabelReader {
         if (labelColumn >= 0) {
             Map<String, Item> idToItem = new HashMap<String, Item>();
             
+            /*
+             * Only the fields of the columns that are used are cut out of
+             * each row, and nothing past the last of them is looked at, so
+             * that columns the projection drops cost next to nothing.
+             */
+            boolean[] needed = new boolean[columns.size()];
+            List<Integer> propertyColumns = new ArrayList<Integer>();
+            int lastColumn = -1;
+            for (int i = 0; i < columns.size(); i++) {
+                Column column = columns.get(i);
+                boolean property = column != null && column.m_uri != null && !column.m_dropped;
+                if (property) {
+                    propertyColumns.add(i);
+                }
+                if (property || i == labelColumn || i == idColumn || i == uriColumn || i == typeColumn) {
+                    needed[i] = true;
+                    lastColumn = i;
+                }
+            }
+            String[] fields = new String[lastColumn + 1];
+            
             /*
              * The first pass will collect all the items and
              * their properties as well as assign URIs to them.
              */
             while ((line = lineReader.readLine()) != null) {
+                cancellation.check();
+                
                 line = line.trim();
                 if (line.length() > 0) {
-                    String[] fields = StringUtils.splitPreserveAllTokens(line, '\t');
-                    String label = fields[labelColumn].trim();
+                    splitFields(line, needed, fields);
+                    String label = fields[labelColumn];
                     if (label == null || label.length() == 0) {
                         continue;
                     }
                     
-                    String id = idColumn < 0 ? label : fields[idColumn].trim();
-                    if (id.length() == 0) {
+                    String id = idColumn < 0 ? null : fields[idColumn];
+                    if (id == null || id.length() == 0) {
                         id = label;
                     }
                     
-                    String uri = uriColumn < 0 ? null : fields[uriColumn].trim();
-                    if (uri == null || uri.length() == 0) {
-                        uri = namespace + encode(id);
-                    }
+                    String uri = uriColumn < 0 ? null : fields[uriColumn];
 
-                    String type = typeColumn < 0 ? "Item" : fields[typeColumn].trim();
-                    if (type.length() == 0) {
+                    String type = typeColumn < 0 ? null : fields[typeColumn];
+                    if (type == null || type.length() == 0) {
                         type = "Item";
                     }
 
@@ -217,46 +255,45 @@ public class TSVReader implements BabelReader {
                     if (item == null) {
                         item = new Item();
                         item.m_id = id;
-                        item.m_uri = ResourceFactory.createResource(uri);
+                        item.m_uri = (uri == null || uri.length() == 0) ?
+                            terms.mintResource(namespace, id) : terms.createResource(uri);
                         item.m_label = label;
-                        item.m_type = ResourceFactory.createResource(namespace + encode(type));
+                        item.m_type = terms.mintResource(namespace, type);
                         
                         idToItem.put(id, item);
                     }
                     
-                    for (int f = 0; f < fields.length; f++) {
-                        Column column = columns.get(f);
-                        String field = fields[f].trim();
-                        
-                        if (column != null && column.m_uri != null && field.length() > 0) {
-                            List<String> cells = item.m_properties.get(column);
-                            if (cells == null) {
-                                cells = new LinkedList<String>();
-                                item.m_properties.put(column, cells);
-                            }
-                            cells.add(field);
+                    for (int f : propertyColumns) {
+                        String field = fields[f];
+                        if (field != null && field.length() > 0) {
+                            item.m_properties.put(columns.get(f), field);
                         }
                     }
                 }
             }
                 
+            Property idProperty = terms.createProperty("http://simile.mit.edu/2006/11/exhibit#", "id");
             for (Item item : idToItem.values()) {
+                cancellation.check();
+                
+                // dropped items stay in the map, as other items may refer to them
+                if (projection != null && !projection.acceptsType(item.m_type.getURI())) {
+                    continue;
+                }
+                
                 model.add(item.m_uri, RDF.type, item.m_type);
                 model.add(item.m_uri, RDFS.label, item.m_label);
-                model.add(item.m_uri, ResourceFactory.createProperty("http://simile.mit.edu/2006/11/exhibit#", "id"), item.m_id);
+                model.add(item.m_uri, idProperty, item.m_id);
 
                 for (Column column : item.m_properties.keySet()) {
                     if (column.m_uri != null) {
-                        List<String> cells = item.m_properties.get(column);
-                        if (cells != null) {
-                            for (String cell : cells) {
-                                if (column.m_singleValue) {
-                                    addStatement(model, item.m_uri, column.m_uri, cell, column.m_valueType, idToItem, namespace);
-                                } else {
-                                    String[] values = StringUtils.splitPreserveAllTokens(cell, ';');
-                                    for (String value : values) {
-                                        addStatement(model, item.m_uri, column.m_uri, value.trim(), column.m_valueType, idToItem, namespace);
-                                    }
+                        for (String cell : item.m_properties.getAll(column)) {
+                            if (column.m_singleValue) {
+                                addStatement(model, item.m_uri, column.m_uri, cell, column.m_valueType, idToItem, namespace, terms);
+                            } else {
+                                String[] values = StringUtils.splitPreserveAllTokens(cell, ';');
+                                for (String value : values) {
+                                    addStatement(model, item.m_uri, column.m_uri, value.trim(), column.m_valueType, idToItem, namespace, terms);
                                 }
                             }
                         }
@@ -266,6 +303,25 @@ public class TSVReader implements BabelReader {
         }
     }
     
+    /**
+     * Cuts the first <code>fields.length</code> tab-separated fields out of
+     * a row, trimmed, as <code>splitPreserveAllTokens</code> would. Fields
+     * that are not needed, or that the row is too short to have, are null.
+     */
+    static void splitFields(String line, boolean[] needed, String[] fields) {
+        int start = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (start > line.length()) {
+                fields[i] = null;
+                continue;
+            }
+            int tab = line.indexOf('\t', start);
+            int end = tab < 0 ? line.length() : tab;
+            fields[i] = needed[i] ? line.substring(start, end).trim() : null;
+            start = end + 1;
+        }
+    }
+    
     protected void addStatement(
         Model      			model, 
         Resource            subject, 
@@ -273,7 +329,8 @@ public class TSVReader implements BabelReader {
         String              object, 
         ValueType           valueType, 
         Map<String, Item>   idToItem,
-        String              namespace
+        String              namespace,
+        TermCache           terms
     ) {
         RDFNode v = null;
         if (valueType == ValueType.Item) {
@@ -281,7 +338,7 @@ public class TSVReader implements BabelReader {
             if (item != null) {
                 v = item.m_uri;
             } else {
-                v = ResourceFactory.createResource(namespace + encode(object));
+                v = terms.mintResource(namespace, object);
             }
         } else if (valueType.equals(ValueType.Boolean)) {
         	v = model.createTypedLiteral(new Boolean(object));
@@ -306,15 +363,4 @@ public class TSVReader implements BabelReader {
         }
         model.add(subject, predicate, v);
     }
-    
-    private static final String s_urlEncoding = "UTF-8";
-    private static final URLCodec s_codec = new URLCodec();
-    
-    static String encode(String s) {
-        try {
-            return s_codec.encode(s, s_urlEncoding);
-        } catch (Exception e) {
-            throw new RuntimeException("Exception encoding " + s + " with " + s_urlEncoding + " encoding.");
-        }
-    }
 }
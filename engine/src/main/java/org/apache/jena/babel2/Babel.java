@@ -40,6 +40,16 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.PosixParser;
 import org.apache.jena.babel2.BabelReader;
 import org.apache.jena.babel2.BabelWriter;
+import org.apache.jena.babel2.Capabilities;
+import org.apache.jena.babel2.StreamingBabelReader;
+import org.apache.jena.babel2.StreamingBabelWriter;
+import org.apache.jena.babel2.TripleSink;
+import org.apache.jena.babel2.graph.OffHeapGraph;
+import org.apache.jena.babel2.graph.ProjectedGraph;
+import org.apache.jena.babel2.graph.SpillingGraph;
+import org.apache.jena.babel2.sink.PipelinedSink;
+import org.apache.jena.babel2.sink.Projection;
+import org.apache.jena.babel2.sink.SinkGraph;
 
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
@@ -54,6 +64,18 @@ public class Babel {
 
     final static public Map<String, String> s_previewTemplates = new HashMap<String, String>();
 
+    /**
+     * The graph backend used when a conversion does not ask for one:
+     * "memory" (Jena's default graph) unless overridden by -Dbabel.model.
+     */
+    final static public String s_defaultModelBackend = System.getProperty("babel.model", "memory");
+
+    /**
+     * How many triples the "spill" backend keeps in memory before writing
+     * them to disk, unless overridden by -Dbabel.spill-threshold.
+     */
+    final static public int s_defaultSpillThreshold = Integer.getInteger("babel.spill-threshold", 500000);
+
     static {
         s_readers.put("rdf-xml", "org.apache.jena.babel2.generic.RdfXmlConverter");
         s_readers.put("turtle", "org.apache.jena.babel2.generic.TurtleConverter");
@@ -84,6 +106,7 @@ public class Babel {
 //        s_writers.put("bibtex-exhibit-json", "org.apache.jena.babel2.exhibit.BibtexExhibitJsonWriter");
 //        s_writers.put("bibtex-exhibit-jsonp", "org.apache.jena.babel2.exhibit.BibtexExhibitJsonpWriter");
         s_writers.put("text", "org.apache.jena.babel2.generic.TextWriter");
+        s_writers.put("index", "org.apache.jena.babel2.generic.InvertedIndexWriter");
 
         s_writersFromMimeType.put("application/rdf+xml", "org.apache.jena.babel2.generic.RdfXmlConverter");
         s_writersFromMimeType.put("application/rdf+n3", "org.apache.jena.babel2.generic.TurtleConverter");
@@ -127,6 +150,129 @@ public class Babel {
         }
     }
     
+    /**
+     * Creates the model a conversion materializes its data into. The backend
+     * is "memory" for Jena's default graph, "off-heap" for an
+     * {@link OffHeapGraph}, which keeps terms and triples outside of the heap,
+     * or "spill" for a {@link SpillingGraph}, which writes sorted runs to the
+     * temp directory; "spill:<count>" sets how many triples it buffers.
+     */
+    static public Model createModel(String backend) {
+        if (backend == null) {
+            backend = s_defaultModelBackend;
+        }
+        if ("off-heap".equals(backend)) {
+            return ModelFactory.createModelForGraph(new OffHeapGraph());
+        } else if (backend.equals("spill") || backend.startsWith("spill:")) {
+            int threshold = s_defaultSpillThreshold;
+            if (backend.length() > 6) {
+                try {
+                    threshold = Math.max(1, Integer.parseInt(backend.substring(6)));
+                } catch (NumberFormatException e) {
+                    // keep the default
+                }
+            }
+            return ModelFactory.createModelForGraph(new SpillingGraph(threshold, null));
+        } else {
+            return ModelFactory.createDefaultModel();
+        }
+    }
+    
+    /**
+     * How a conversion is run, from cheapest to dearest.
+     */
+    public enum Plan {
+        /**
+         * The reader feeds the writer's sink directly.
+         */
+        STREAM,
+        /**
+         * The triples are collected into a {@link SpillingGraph}, which
+         * lists them sorted by subject, for a writer that needs them grouped.
+         */
+        SORT_AND_GROUP,
+        /**
+         * The triples are collected into a model the writer can look into.
+         */
+        MATERIALIZE
+    }
+    
+    /**
+     * Picks the cheapest plan the reader's and the writer's
+     * {@link Capabilities} allow. Asking for a particular model backend
+     * means materializing into it. Several inputs are never grouped by
+     * subject as a whole, even if each one is. A projection that filters
+     * by type needs grouped triples too.
+     */
+    static public Plan choosePlan(
+        BabelReader babelReader, 
+        BabelWriter babelWriter, 
+        Properties readerProperties, 
+        Properties writerProperties, 
+        String modelBackend, 
+        boolean singleInput,
+        Projection projection
+    ) {
+        if (modelBackend != null || !(babelWriter instanceof StreamingBabelWriter)) {
+            return Plan.MATERIALIZE;
+        }
+        
+        Capabilities readerCapabilities = Capabilities.forReader(babelReader, readerProperties);
+        Capabilities writerCapabilities = Capabilities.forWriter(babelWriter, writerProperties);
+        if (!writerCapabilities.isStreaming() ||
+            writerCapabilities.getOrdering() == Capabilities.Ordering.GRAPH ||
+            readerCapabilities.getOrdering() == Capabilities.Ordering.GRAPH) {
+            return Plan.MATERIALIZE;
+        }
+        
+        boolean needsGrouping = writerCapabilities.getOrdering() == Capabilities.Ordering.SUBJECT_GROUPED ||
+            (projection != null && projection.hasTypeFilter());
+        boolean grouped = singleInput && readerCapabilities.getOrdering() == Capabilities.Ordering.SUBJECT_GROUPED;
+        return needsGrouping && !grouped ? Plan.SORT_AND_GROUP : Plan.STREAM;
+    }
+    
+    /**
+     * Returns a view of the model with only what the projection keeps, or
+     * the model itself if there is no projection.
+     */
+    static public Model project(Model model, Projection projection) {
+        if (projection == null) {
+            return model;
+        }
+        return ModelFactory.createModelForGraph(new ProjectedGraph(model.getGraph(), projection));
+    }
+    
+    /**
+     * Returns the model backend for a plan that materializes.
+     */
+    static public String getModelBackend(Plan plan, String modelBackend) {
+        return plan == Plan.SORT_AND_GROUP ? "spill" : modelBackend;
+    }
+    
+    /**
+     * Reads into the model, except when the model is a {@link SinkGraph}
+     * and the reader can stream: then the triples go straight to the sink,
+     * without going through the model.
+     */
+    static public void read(BabelReader babelReader, Reader reader, Model model, Properties properties, Locale locale) throws Exception {
+        if (babelReader instanceof StreamingBabelReader && model.getGraph() instanceof SinkGraph) {
+            ((StreamingBabelReader) babelReader).read(reader, ((SinkGraph) model.getGraph()).getSink(), properties, locale);
+        } else {
+            babelReader.read(reader, model, properties, locale);
+        }
+    }
+    
+    /**
+     * @see #read(BabelReader, Reader, Model, Properties, Locale)
+     */
+    static public void read(BabelReader babelReader, InputStream inputStream, Model model, Properties properties, Locale locale) throws Exception {
+        if (babelReader instanceof StreamingBabelReader && model.getGraph() instanceof SinkGraph) {
+            ((StreamingBabelReader) babelReader).read(inputStream, ((SinkGraph) model.getGraph()).getSink(), properties, locale);
+        } else {
+            babelReader.read(inputStream, model, properties, locale);
+        }
+    }
+    
     static public void main(String[] args) throws Exception {
 
         File input_file = null;
@@ -136,6 +282,9 @@ public class Babel {
         File output_file = null;
         String output_encoding = "ISO-8859-1";
         String output_format = "exhibit-json";
+        
+        String model_backend = null;
+        boolean pipeline = false;
 
         CommandLineParser parser = new PosixParser();
 
@@ -143,6 +292,8 @@ public class Babel {
         options.addOption( "h", "help", false, "show this help screen" );
         options.addOption( "i", "input-encoding <name>", true, "the input file encoding (default: " + input_encoding + ")");
         options.addOption( "o", "output-encoding <name>", true, "the output file encoding (default: " + output_encoding + ")");
+        options.addOption( "m", "model <name>", true, "the graph backend, memory, off-heap or spill[:<count>] (default: " + s_defaultModelBackend + ")");
+        options.addOption( "p", "pipeline", false, "read and write on separate threads, when the output is streamed");
         
         try {
             CommandLine line = parser.parse(options, args);
@@ -162,6 +313,14 @@ public class Babel {
                 output_encoding = line.getOptionValue("o");
             }
             
+            if (line.hasOption("m")) {
+                model_backend = line.getOptionValue("m");
+            }
+            
+            if (line.hasOption("p")) {
+                pipeline = true;
+            }
+            
             input_file = new File(clean_args[0]);
             if (!input_file.exists()) fatal("Can't find the input file '" + input_file + "'.");
             if (!input_file.canRead()) fatal("You don't have permission to read from the input file '" + input_file + "'.");
@@ -192,8 +351,6 @@ public class Babel {
         BabelReader babelReader = Babel.getReader(input_format);
         BabelWriter babelWriter = Babel.getWriter(output_format);
         
-        Model model = ModelFactory.createDefaultModel();
-
         Properties properties = new Properties();
         properties.setProperty("namespace", "urn:babel:");
         properties.setProperty("url", "urn:babel:/");
@@ -202,23 +359,64 @@ public class Babel {
         
         InputStream input = null;
         OutputStream output = null;
+        Model model = null;
+        TripleSink sink = null;
 
         try {
             input = new FileInputStream(input_file);
             output = (output_file == null) ? System.out : new FileOutputStream(output_file); 
+            Writer writer = babelWriter.takesWriter() ? new OutputStreamWriter(output, output_encoding) : null;
+            
+            /*
+             * Writers that can take the triples as they are read do so,
+             * unless a particular model backend has been asked for.
+             */
+            Plan plan = choosePlan(babelReader, babelWriter, properties, properties, model_backend, true, null);
+            if (plan == Plan.STREAM) {
+                StreamingBabelWriter streamingWriter = (StreamingBabelWriter) babelWriter;
+                sink = (writer != null) ?
+                    streamingWriter.createSink(writer, properties, locale) :
+                    streamingWriter.createSink(output, properties, locale);
+                if (pipeline) {
+                    sink = new PipelinedSink(sink);
+                }
+                model = ModelFactory.createModelForGraph(new SinkGraph(sink));
+                sink.start();
+            } else {
+                model = createModel(getModelBackend(plan, model_backend));
+            }
             
             if (babelReader.takesReader()) {
                 Reader reader = new BufferedReader(new InputStreamReader(input,input_encoding));
-                Writer writer = new OutputStreamWriter(output, output_encoding);
-                babelReader.read(reader, model, properties, locale);
+                read(babelReader, reader, model, properties, locale);
+            } else {
+                read(babelReader, input, model, properties, locale);
+            }
+            
+            if (sink != null) {
+                sink.finish();
+            } else if (writer != null) {
                 babelWriter.write(writer, model, properties, locale);
             } else {
-                babelReader.read(input, model, properties, locale);
                 babelWriter.write(output, model, properties, locale);
             }
+            
+            if (writer != null) {
+                writer.flush();
+            }
         } finally {
-            output.close();
-            input.close();
+            if (sink instanceof PipelinedSink) {
+                ((PipelinedSink) sink).cancel();
+            }
+            if (output != null) {
+                output.close();
+            }
+            if (input != null) {
+                input.close();
+            }
+            if (model != null) {
+                model.close();
+            }
         }
     }
     
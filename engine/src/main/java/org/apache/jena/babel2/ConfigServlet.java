@@ -18,12 +18,12 @@
 
 package org.apache.jena.babel2;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -34,95 +34,219 @@ import org.apache.jena.babel2.BabelReader;
 import org.apache.jena.babel2.BabelWriter;
 import org.apache.jena.babel2.SemanticType;
 import org.apache.jena.babel2.SerializationFormat;
-import org.apache.jena.babel2.util.IndentWriter;
-import org.apache.jena.babel2.util.JSObject;
-
+import org.apache.jena.babel2.util.JsonWriter;
+import org.apache.jena.babel2.util.Util;
 
+/**
+ * Serves the description of the registered readers and writers to the web
+ * UI, either as a <code>var Config = ...;</code> script (the default) or, with
+ * <code>format=json</code>, as plain JSON for API clients.
+ * <p>
+ * The payload only depends on the converter registry, so it is rendered once
+ * (plain and gzipped) and rebuilt only when the registry changes; responses
+ * carry an ETag and can be revalidated with <code>If-None-Match</code>.
+ */
 public class ConfigServlet extends HttpServlet {
 
 	private static final long serialVersionUID = -3750091194974192970L;
 
 	//final static private Logger s_logger = Logger.getLogger(ConfigServlet.class);
 
+	final static private String s_cacheControl = "public, max-age=300";
+
+	static protected class Variant {
+		final String	m_mimeType;
+		final byte[]	m_bytes;
+		final byte[]	m_gzippedBytes;
+		final String	m_etag;
+		final String	m_gzippedEtag;
+
+		Variant(String mimeType, byte[] bytes) throws IOException {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length / 4);
+			GZIPOutputStream gzip = new GZIPOutputStream(baos);
+			gzip.write(bytes);
+			gzip.close();
+
+			String hash = Util.computeMD5(bytes);
+
+			m_mimeType = mimeType;
+			m_bytes = bytes;
+			m_gzippedBytes = baos.toByteArray();
+			m_etag = "\"" + hash + "\"";
+			m_gzippedEtag = "\"" + hash + "-gz\"";
+		}
+	}
+
+	static protected class Payload {
+		final int		m_registryHash;
+		final Variant	m_script;
+		final Variant	m_json;
+
+		Payload(int registryHash, Variant script, Variant json) {
+			m_registryHash = registryHash;
+			m_script = script;
+			m_json = json;
+		}
+	}
+
+	private volatile Payload m_payload;
+
+	@Override
+	public void init() throws ServletException {
+		super.init();
+
+		try {
+			getPayload();
+		} catch (IOException e) {
+			throw new ServletException("Error building the configuration payload", e);
+		}
+	}
+
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) 
 			throws ServletException, IOException {
 		
-		JSObject config = new JSObject();
-		
+		Payload payload = getPayload();
+		Variant variant = "json".equals(request.getParameter("format")) ? payload.m_json : payload.m_script;
+
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		boolean gzip = acceptEncoding != null && acceptEncoding.indexOf("gzip") >= 0;
+		String etag = gzip ? variant.m_gzippedEtag : variant.m_etag;
+
+		response.setHeader("ETag", etag);
+		response.setHeader("Cache-Control", s_cacheControl);
+		response.setHeader("Vary", "Accept-Encoding");
+
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null && (ifNoneMatch.indexOf(etag) >= 0 || ifNoneMatch.trim().equals("*"))) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		byte[] bytes = gzip ? variant.m_gzippedBytes : variant.m_bytes;
+
+		response.setCharacterEncoding("UTF-8");
+		response.setContentType(variant.m_mimeType);
+		if (gzip) {
+			response.setHeader("Content-Encoding", "gzip");
+		}
+		response.setContentLength(bytes.length);
+		response.getOutputStream().write(bytes);
+	}
+
+	/**
+	 * Returns the cached payload, rebuilding it first if the converter
+	 * registry has changed since it was rendered.
+	 */
+	protected Payload getPayload() throws IOException {
+		int registryHash = getRegistryHash();
+		Payload payload = m_payload;
+		if (payload == null || payload.m_registryHash != registryHash) {
+			synchronized (this) {
+				payload = m_payload;
+				if (payload == null || payload.m_registryHash != registryHash) {
+					payload = new Payload(
+						registryHash,
+						new Variant("text/javascript", render(true)),
+						new Variant("application/json", render(false))
+					);
+					m_payload = payload;
+				}
+			}
+		}
+		return payload;
+	}
+
+	static protected int getRegistryHash() {
+		return (Babel.s_readers.hashCode() * 31 + Babel.s_writers.hashCode()) * 31 + 
+			Babel.s_previewTemplates.hashCode();
+	}
+
+	static protected byte[] render(boolean script) throws IOException {
 		Map<Class<? extends SerializationFormat>, SerializationFormat> formats = new HashMap<Class<? extends SerializationFormat>, SerializationFormat>();
 		Map<Class<? extends SemanticType>, SemanticType> semanticTypes = new HashMap<Class<? extends SemanticType>, SemanticType>();
 		
-		List<JSObject> readers = new ArrayList<JSObject>();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(4096);
+		JsonWriter writer = new JsonWriter(new OutputStreamWriter(baos, "UTF-8"), !script);
+		if (script) {
+			writer.raw("var Config = ");
+		}
+		writer.startObject();
+
+		writer.key("readers").startArray();
 		for (String name : Babel.s_readers.keySet()) {
 			BabelReader reader = Babel.getReader(name);
-			JSObject readerO = new JSObject();
+			if (reader == null) {
+				continue;
+			}
 			
 			SerializationFormat format = reader.getSerializationFormat();
 			SemanticType semanticType = reader.getSemanticType();
 			formats.put(format.getClass(), format);
 			semanticTypes.put(semanticType.getClass(), semanticType);
 			
-			readerO.put("name", name);
-			readerO.put("format", format.getClass().getName());
-			readerO.put("semanticType", semanticType.getClass().getName());
-			
-			readers.add(readerO);
+			writer.startObject();
+			writer.key("name").value(name);
+			writer.key("format").value(format.getClass().getName());
+			writer.key("semanticType").value(semanticType.getClass().getName());
+			writer.endObject();
 		}
-		config.put("readers", readers);
+		writer.endArray();
 
-		List<JSObject> writers = new ArrayList<JSObject>();
+		writer.key("writers").startArray();
 		for (String name : Babel.s_writers.keySet()) {
-			BabelWriter writer = Babel.getWriter(name);
-			JSObject writerO = new JSObject();
+			BabelWriter babelWriter = Babel.getWriter(name);
+			if (babelWriter == null) {
+				continue;
+			}
 			
-			SerializationFormat format = writer.getSerializationFormat();
-			SemanticType semanticType = writer.getSemanticType();
+			SerializationFormat format = babelWriter.getSerializationFormat();
+			SemanticType semanticType = babelWriter.getSemanticType();
 			formats.put(format.getClass(), format);
 			semanticTypes.put(semanticType.getClass(), semanticType);
 			
-			writerO.put("name", name);
-			writerO.put("format", format.getClass().getName());
-			writerO.put("semanticType", semanticType.getClass().getName());
+			writer.startObject();
+			writer.key("name").value(name);
+			writer.key("format").value(format.getClass().getName());
+			writer.key("semanticType").value(semanticType.getClass().getName());
 			if (Babel.s_previewTemplates.containsKey(name)) {
-				writerO.put("previewTemplate", Babel.s_previewTemplates.get(name));
+				writer.key("previewTemplate").value(Babel.s_previewTemplates.get(name));
 			}
-			
-			writers.add(writerO);
+			writer.endObject();
 		}
-		config.put("writers", writers);
+		writer.endArray();
 		
-		JSObject formatsO = new JSObject();
+		writer.key("formats").startObject();
 		for (Class<? extends SerializationFormat> c : formats.keySet()) {
 			SerializationFormat format = formats.get(c);
 			
-			JSObject formatO = new JSObject();
-			formatO.put("name", c.getName());
-			formatO.put("label", format.getLabel(null));
-			formatO.put("description", format.getDescription(null));
-			
-			formatsO.put(c.getName(), formatO);
+			writer.key(c.getName()).startObject();
+			writer.key("name").value(c.getName());
+			writer.key("label").value(format.getLabel(null));
+			writer.key("description").value(format.getDescription(null));
+			writer.endObject();
 		}
-		config.put("formats", formatsO);
+		writer.endObject();
 		
-		JSObject semanticTypesO = new JSObject();
+		writer.key("semanticTypes").startObject();
 		for (Class<? extends SemanticType> c : semanticTypes.keySet()) {
 			SemanticType semanticType = semanticTypes.get(c);
 			
-			JSObject semanticTypeO = new JSObject();
-			semanticTypeO.put("name", c.getName());
-			semanticTypeO.put("label", semanticType.getLabel(null));
-			semanticTypeO.put("description", semanticType.getDescription(null));
-			semanticTypeO.put("supertype", c.getSuperclass().getName());
-			
-			semanticTypesO.put(c.getName(), semanticTypeO);
+			writer.key(c.getName()).startObject();
+			writer.key("name").value(c.getName());
+			writer.key("label").value(semanticType.getLabel(null));
+			writer.key("description").value(semanticType.getDescription(null));
+			writer.key("supertype").value(c.getSuperclass().getName());
+			writer.endObject();
+		}
+		writer.endObject();
+
+		writer.endObject();
+		if (script) {
+			writer.raw(";\n");
 		}
-		config.put("semanticTypes", semanticTypesO);
-		
-		IndentWriter writer = new IndentWriter(new OutputStreamWriter(response.getOutputStream()));
-		writer.print("var Config = ");
-		JSObject.writeObject(writer, config);
-		writer.println(";");
 		writer.close();
+		
+		return baos.toByteArray();
 	}
 }
@@ -24,11 +24,15 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 
 import javax.servlet.ServletException;
@@ -36,124 +40,264 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.jena.babel2.BabelReader;
-import org.apache.jena.babel2.BabelWriter;
-import org.apache.jena.babel2.util.Util;
+import org.apache.jena.babel2.Capabilities;
+import org.apache.jena.babel2.TripleSink;
+import org.apache.jena.babel2.generic.RSS1p0Writer;
+import org.apache.jena.babel2.sink.GraphSink;
+import org.apache.jena.babel2.sink.LimitReachedException;
+import org.apache.jena.babel2.sink.LimitSink;
+import org.apache.jena.babel2.sink.SinkGraph;
 import org.apache.log4j.Logger;
 
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 
+/**
+ * Aggregates the items of Exhibit pages (<code>url</code>) and Exhibit JSON
+ * files (<code>data-url</code>) into an RSS 1.0 feed.
+ * <p>
+ * The items computed from each source are kept with the source's
+ * ETag/Last-Modified validators; the graph they came from is not. Each request only
+ * revalidates the sources with a conditional GET, and re-parses and recomputes
+ * the items of those that changed. The feed carries a Last-Modified header,
+ * the most recent change of its sources, and answers If-Modified-Since with 304.
+ * <p>
+ * The feed has at most <code>limit</code> items. Sources are read up to the
+ * <code>max-items</code> init parameter, when their reader allows it, and
+ * their download is cut short once it is reached.
+ */
 public class ExhibitFeederServlet extends HttpServlet {
     private static final long serialVersionUID = -370492767091187444L;
     final static private Logger s_logger = Logger.getLogger(ExhibitFeederServlet.class);
+    
+    final static private int s_maxCachedSources = 64;
+    
+    private int m_maxItems = -1;
+    
+    static protected class Source {
+        final String        m_url;
+        final String        m_readerName;
+        
+        long                m_parsed;   // when the source was last parsed, 0 if never
+        List<RSS1p0Writer.Item> m_items = Collections.emptyList();
+        String              m_etag;
+        long                m_lastModified;
+        long                m_changed;
+        
+        Source(String url, String readerName) {
+            m_url = url;
+            m_readerName = readerName;
+        }
+    }
+    
+    final private Map<String, Source> m_sources = Collections.synchronizedMap(
+        new LinkedHashMap<String, Source>(16, 0.75f, true) {
+            private static final long serialVersionUID = -2619425163306460374L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Source> eldest) {
+                return size() > s_maxCachedSources;
+            }
+        });
 	
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        
+        String maxItems = getInitParameter("max-items");
+        if (maxItems != null) {
+            m_maxItems = Integer.parseInt(maxItems);
+        }
+    }
+    
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
-        Writer writer = new BufferedWriter(
-                new OutputStreamWriter(response.getOutputStream(), "UTF-8"));
-        try {
-            internalDoGet(request, response, writer);
-        } finally {
-            writer.flush();
-            writer.close();
-        }
+        internalDoGet(request, response);
     }
     
     protected void internalDoGet(
         HttpServletRequest  request, 
-        HttpServletResponse response,
-        Writer              writer
+        HttpServletResponse response
     ) throws ServletException, IOException {
         
-        List<String> pageURLs = new ArrayList<String>();
-        List<String> dataURLs = new ArrayList<String>();
+        RequestParameters params = RequestParameters.get(request);
+        List<String> pageURLs = params.getAll("url");
+        List<String> dataURLs = params.getAll("data-url");
         
-        String[] params = StringUtils.splitPreserveAllTokens(request.getQueryString(), '&');
-        if (params != null) {
-            for (int i = 0; i < params.length; i++) {
-                String param = params[i];
-                int equalIndex = param.indexOf('=');
-    
-                if (equalIndex >= 0) {
-                    String rawName = param.substring(0, equalIndex);
-                    String rawValue = param.substring(equalIndex + 1);
-    
-                    String name = Util.decode(rawName);
-                    String value = Util.decode(rawValue);
-    
-                    if (name.equals("url")) {
-                        pageURLs.add(value);
-                    } else if (name.equals("data-url")) {
-                        dataURLs.add(value);
-                    }
-                }
+        List<Source> sources = new ArrayList<Source>();
+        for (String pageURL : pageURLs) {
+            sources.add(refresh(getSource(pageURL, "exhibit-html")));
+        }
+        for (String dataURL : dataURLs) {
+            sources.add(refresh(getSource(dataURL, "exhibit-json")));
+        }
+        
+        long lastModified = 0;
+        for (Source source : sources) {
+            lastModified = Math.max(lastModified, source.m_changed);
+        }
+        lastModified -= lastModified % 1000; // HTTP dates have a one second resolution
+        
+        if (lastModified > 0) {
+            long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            if (ifModifiedSince >= lastModified) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
             }
+            response.setDateHeader("Last-Modified", lastModified);
         }
         
-        BabelReader dataReader = Babel.getReader("exhibit-json"); 
-        BabelReader pageReader = Babel.getReader("exhibit-html"); 
-        BabelWriter rssWriter = Babel.getWriter("rss1.0");
+        List<RSS1p0Writer.Item> items = new ArrayList<RSS1p0Writer.Item>();
+        for (Source source : sources) {
+            synchronized (source) {
+                items.addAll(source.m_items);
+            }
+        }
         
-        Properties readerProperties = new Properties();
-        Properties writerProperties = new Properties();
+        int limit = params.getInt("limit", -1);
+        if (limit >= 0 && limit < items.size()) {
+            items = items.subList(0, limit);
+        }
         
-        Model model = ModelFactory.createDefaultModel();
-        Locale locale = request.getLocale();
+        String feedURL = "http://www.example.com/";
+        if (pageURLs.size() > 0) {
+            feedURL = pageURLs.get(0);
+        } else if (dataURLs.size() > 0) {
+            feedURL = dataURLs.get(0);
+        }
+        
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType(Babel.getWriter("rss1.0").getSerializationFormat().getMimetype());
+        
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(response.getOutputStream(), "UTF-8"));
         try {
-            for (String pageURL : pageURLs) {
-                _readURL(pageURL, readerProperties, pageReader, model);
-            }
-            for (String dataURL : dataURLs) {
-                _readURL(dataURL, readerProperties, dataReader, model);
-            }
-            
-            String feedURL = "http://www.example.com/";
-            if (pageURLs.size() > 0) {
-                feedURL = pageURLs.get(0);
-            } else if (dataURLs.size() > 0) {
-                feedURL = dataURLs.get(0);
-            }
-            writerProperties.setProperty("namespace", makeIntoNamespace(feedURL));
-            writerProperties.setProperty("url", feedURL);
-            
-            response.setCharacterEncoding("UTF-8");
-            response.setContentType(rssWriter.getSerializationFormat().getMimetype());
-            
-            rssWriter.write(writer, model, writerProperties, locale);
+            RSS1p0Writer.writeFeed(writer, feedURL, items);
         } catch (Exception e) {
             s_logger.error(e);
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } finally {
+            writer.flush();
+            writer.close();
         }
 	}
     
-    protected void _readURL(String url, Properties readerProperties, BabelReader babelReader, Model model) { 
-        try {
-            URLConnection connection = new URL(url).openConnection();
-            connection.setConnectTimeout(5000);
-            connection.connect();
-            
-            readerProperties.setProperty("namespace", makeIntoNamespace(url));
-            readerProperties.setProperty("url", url);
-
-            String encoding = connection.getContentEncoding();
-            
-            Reader reader = new InputStreamReader(
-                connection.getInputStream(), (encoding == null) ? "ISO-8859-1" : encoding);
-                        
+    protected Source getSource(String url, String readerName) {
+        String key = readerName + " " + url;
+        synchronized (m_sources) {
+            Source source = m_sources.get(key);
+            if (source == null) {
+                source = new Source(url, readerName);
+                m_sources.put(key, source);
+            }
+            return source;
+        }
+    }
+    
+    /**
+     * Revalidates a source against its upstream validators and, if it
+     * changed, parses it again and recomputes its items. On failure the
+     * previously parsed items, if any, keep being served.
+     */
+    protected Source refresh(Source source) { 
+        synchronized (source) {
             try {
-                babelReader.read(reader, model, readerProperties, Locale.getDefault());
-            } finally {
-                reader.close();
+                URLConnection connection = new URL(source.m_url).openConnection();
+                connection.setConnectTimeout(5000);
+                connection.setReadTimeout(30000);
+                if (source.m_parsed > 0) {
+                    if (source.m_etag != null) {
+                        connection.setRequestProperty("If-None-Match", source.m_etag);
+                    }
+                    if (source.m_lastModified > 0) {
+                        connection.setIfModifiedSince(source.m_lastModified);
+                    }
+                }
+                connection.connect();
+                
+                if (source.m_parsed > 0 && connection instanceof HttpURLConnection &&
+                        ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    ((HttpURLConnection) connection).disconnect();
+                    return source;
+                }
+                
+                BabelReader babelReader = Babel.getReader(source.m_readerName);
+                if (babelReader == null) {
+                    s_logger.error("No reader of name " + source.m_readerName);
+                    return source;
+                }
+                
+                Properties readerProperties = new Properties();
+                readerProperties.setProperty("namespace", makeIntoNamespace(source.m_url));
+                readerProperties.setProperty("url", source.m_url);
+                
+                String encoding = connection.getContentEncoding();
+                
+                Reader reader = new InputStreamReader(
+                    connection.getInputStream(), (encoding == null) ? "ISO-8859-1" : encoding);
+                
+                // only the items are kept, so the model goes once they are collected
+                List<RSS1p0Writer.Item> items;
+                Model model = ModelFactory.createDefaultModel();
+                try {
+                    try {
+                        read(babelReader, reader, model, readerProperties);
+                    } catch (Exception e) {
+                        if (!LimitReachedException.isCause(e)) {
+                            throw e;
+                        }
+                        if (connection instanceof HttpURLConnection) {
+                            ((HttpURLConnection) connection).disconnect();
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                    items = RSS1p0Writer.collectItems(model);
+                } finally {
+                    model.close();
+                }
+                
+                long lastModified = connection.getLastModified();
+                
+                if (lastModified > 0) {
+                    source.m_changed = lastModified;
+                } else if (source.m_changed == 0 || !items.equals(source.m_items)) {
+                    source.m_changed = System.currentTimeMillis();
+                }
+                source.m_parsed = System.currentTimeMillis();
+                source.m_items = items;
+                source.m_etag = connection.getHeaderField("ETag");
+                source.m_lastModified = lastModified;
+            } catch (Exception e) {
+                s_logger.error(e);
             }
-        } catch (Exception e) {
-            s_logger.error(e);
-            return;
+            return source;
         }
     }
         
+    /**
+     * Reads into the model, stopping at <code>max-items</code> items unless
+     * the reader looks into the model as it reads.
+     */
+    protected void read(BabelReader babelReader, Reader reader, Model model, Properties readerProperties) throws Exception {
+        if (m_maxItems < 0 || 
+            Capabilities.forReader(babelReader, readerProperties).getOrdering() == Capabilities.Ordering.GRAPH) {
+            babelReader.read(reader, model, readerProperties, Locale.getDefault());
+            return;
+        }
+        
+        TripleSink sink = new LimitSink(new GraphSink(model.getGraph()), 0, m_maxItems, true);
+        sink.start();
+        try {
+            Babel.read(babelReader, reader, ModelFactory.createModelForGraph(new SinkGraph(sink)), 
+                readerProperties, Locale.getDefault());
+        } finally {
+            sink.finish();
+        }
+    }
+    
     static protected String makeIntoNamespace(String s) {
         if (s.endsWith("#")) {
             return s;
@@ -22,10 +22,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -39,11 +44,12 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
 import org.apache.commons.lang.StringEscapeUtils;
-import org.apache.commons.lang.StringUtils;
-import org.apache.jena.babel2.util.Util;
+import org.apache.jena.babel2.util.LimitedInputStream;
 import org.apache.log4j.Logger;
 import org.cyberneko.html.parsers.DOMParser;
 import org.w3c.dom.Document;
@@ -52,6 +58,15 @@ import org.xml.sax.InputSource;
 
 
 /**
+ * Extracts a fragment, selected by an XPath expression, from a remote HTML
+ * page and returns it through a JSONP callback.
+ * <p>
+ * Parsed pages are kept in a small LRU cache together with their ETag and
+ * Last-Modified validators, so repeated calls on the same page only cost a
+ * conditional GET. Compiled XPath expressions, XPath instances and
+ * transformers are kept per thread since none of them is thread-safe.
+ * Pages larger than the <code>max-page-size</code> init parameter are refused.
+ * 
  * @author dfhuynh
  *
  */
@@ -60,84 +75,114 @@ public class HtmlExtractorServlet extends HttpServlet {
 
     final static private Logger s_logger = Logger.getLogger(HtmlExtractorServlet.class);
 
+    final static private int s_maxCachedPages = 32;
+    final static private int s_maxCachedExpressions = 256;
+    final static private long s_defaultMaxPageSize = 5 * 1024 * 1024;
+
+    static protected class CachedPage {
+        final Document  m_document;
+        final String    m_etag;
+        final long      m_lastModified;
+
+        CachedPage(Document document, String etag, long lastModified) {
+            m_document = document;
+            m_etag = etag;
+            m_lastModified = lastModified;
+        }
+    }
+
+    static protected class LRUMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 6118236011467428713L;
+
+        final private int m_maxSize;
+
+        public LRUMap(int maxSize) {
+            super(16, 0.75f, true);
+            m_maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > m_maxSize;
+        }
+    }
+
+    static private final ThreadLocal<XPath> s_xpath = new ThreadLocal<XPath>() {
+        @Override
+        protected XPath initialValue() {
+            return XPathFactory.newInstance().newXPath();
+        }
+    };
+
+    static private final ThreadLocal<XPath> s_htmlXPath = new ThreadLocal<XPath>() {
+        @Override
+        protected XPath initialValue() {
+            XPath xpath = XPathFactory.newInstance().newXPath();
+            xpath.setNamespaceContext(new HtmlNamespaceContext());
+            return xpath;
+        }
+    };
+
+    static private final ThreadLocal<Map<String, XPathExpression>> s_expressions = 
+        new ThreadLocal<Map<String, XPathExpression>>() {
+            @Override
+            protected Map<String, XPathExpression> initialValue() {
+                return new LRUMap<String, XPathExpression>(s_maxCachedExpressions);
+            }
+        };
+
+    static private final ThreadLocal<Transformer> s_transformer = new ThreadLocal<Transformer>() {
+        @Override
+        protected Transformer initialValue() {
+            try {
+                Transformer transformer = TransformerFactory.newInstance().newTransformer();
+                transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+                transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+                transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+                return transformer;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
+    final private Map<String, CachedPage> m_pages = 
+        Collections.synchronizedMap(new LRUMap<String, CachedPage>(s_maxCachedPages));
+
+    private long m_maxPageSize = s_defaultMaxPageSize;
+
+    @Override
+    public void init() throws ServletException {
+        super.init();
+
+        String maxPageSize = getInitParameter("max-page-size");
+        if (maxPageSize != null) {
+            m_maxPageSize = Long.parseLong(maxPageSize);
+        }
+    }
+
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         response.setContentType("text/javascript");
            
-		String callback = "callback";
-        String url = null;
-        String xpath = ".";
+		RequestParameters params = RequestParameters.get(request);
+		String callback = params.get("callback", "callback");
+        String url = params.get("url");
+        String xpath = params.get("xpath", ".");
         String result = "";
-		
-		/*
-		 * Parse parameters
-		 */
-        String[] params = StringUtils.splitPreserveAllTokens(request.getQueryString(), '&');
-        if (params != null) {
-	        for (int i = 0; i < params.length; i++) {
-	            String param = params[i];
-	            int equalIndex = param.indexOf('=');
-	
-	            if (equalIndex >= 0) {
-	                String rawName = param.substring(0, equalIndex);
-	                String rawValue = param.substring(equalIndex + 1);
-	
-	                String name = Util.decode(rawName);
-	                String value = Util.decode(rawValue);
-	
-					if (name.equals("callback")) {
-						callback = value;
-					} else if (name.equals("url")) {
-						url = value;
-                    } else if (name.equals("xpath")) {
-                        xpath = value;
-					}
-	            }
-			}
-        }
         
 		/*
 		 * Load source from URL if any
 		 */
         if (url != null) {
-            InputStream is = null;
             try {
-                is = new URL(url).openStream();
+                Document document = getDocument(url);
+                if (document != null) {
+                    result = extract(document, xpath);
+                }
             } catch (Exception e) {
                 s_logger.error(e);
             }
-            
-            if (is != null) {
-                try {
-                    DOMParser parser = new DOMParser();
-                    parser.parse(new InputSource(is));
-                    
-                    Document document = parser.getDocument();
-                    
-                    XPath xpath1 = XPathFactory.newInstance().newXPath();
-                    Node node = (Node) xpath1.evaluate(xpath, document.getDocumentElement(), XPathConstants.NODE);
-                    if (node == null) {
-                        xpath1.setNamespaceContext(new HtmlNamespaceContext());
-                        node = (Node) xpath1.evaluate(xpath, document.getDocumentElement(), XPathConstants.NODE);
-                    }
-                    
-                    if (node != null) {
-                        StringWriter        sw = new StringWriter();
-                        Transformer         transformer = TransformerFactory.newInstance().newTransformer();
-                        
-                        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-                        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-                        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-                        transformer.transform(new DOMSource(node), new StreamResult(sw));
-                            
-                        result = sw.toString();
-                    }
-                } catch (Exception e) {
-                    s_logger.error(e);
-                } finally {
-                    is.close();
-                }
-            }
         }
         
         PrintWriter writer = response.getWriter();
@@ -145,6 +190,95 @@ public class HtmlExtractorServlet extends HttpServlet {
         writer.print(StringEscapeUtils.escapeJavaScript(result));
         writer.write("\")");
 	}
+
+    /**
+     * Returns the parsed page at the given URL, revalidating a cached copy
+     * with a conditional GET rather than fetching and parsing it again.
+     */
+    protected Document getDocument(String url) throws Exception {
+        CachedPage cached = m_pages.get(url);
+
+        URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(5000);
+        if (cached != null) {
+            if (cached.m_etag != null) {
+                connection.setRequestProperty("If-None-Match", cached.m_etag);
+            }
+            if (cached.m_lastModified > 0) {
+                connection.setIfModifiedSince(cached.m_lastModified);
+            }
+        }
+        connection.connect();
+
+        if (cached != null && connection instanceof HttpURLConnection &&
+                ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            ((HttpURLConnection) connection).disconnect();
+            return cached.m_document;
+        }
+
+        long contentLength = connection.getContentLength();
+        if (contentLength > m_maxPageSize) {
+            throw new IOException("Page at " + url + " is larger than " + m_maxPageSize + " bytes");
+        }
+
+        InputStream is = new LimitedInputStream(connection.getInputStream(), m_maxPageSize);
+        try {
+            DOMParser parser = new DOMParser();
+            parser.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
+            parser.parse(new InputSource(is));
+
+            Document document = parser.getDocument();
+
+            String etag = connection.getHeaderField("ETag");
+            long lastModified = connection.getLastModified();
+            if (etag != null || lastModified > 0) {
+                m_pages.put(url, new CachedPage(document, etag, lastModified));
+            } else {
+                m_pages.remove(url);
+            }
+            return document;
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Serializes the first node matching the expression. Cached documents are
+     * shared between requests, so reads are serialized on the document.
+     */
+    protected String extract(Document document, String xpath) throws Exception {
+        synchronized (document) {
+            Node node = null;
+            try {
+                node = (Node) getExpression(xpath, false).evaluate(document.getDocumentElement(), XPathConstants.NODE);
+            } catch (XPathExpressionException e) {
+                // e.g. the expression uses the h: prefix, retry below
+            }
+            if (node == null) {
+                node = (Node) getExpression(xpath, true).evaluate(document.getDocumentElement(), XPathConstants.NODE);
+            }
+
+            if (node == null) {
+                return "";
+            }
+
+            StringWriter sw = new StringWriter();
+            s_transformer.get().transform(new DOMSource(node), new StreamResult(sw));
+            return sw.toString();
+        }
+    }
+
+    static protected XPathExpression getExpression(String xpath, boolean html) throws XPathExpressionException {
+        Map<String, XPathExpression> expressions = s_expressions.get();
+        String key = html ? "h:" + xpath : "-:" + xpath;
+
+        XPathExpression expression = expressions.get(key);
+        if (expression == null) {
+            expression = (html ? s_htmlXPath : s_xpath).get().compile(xpath);
+            expressions.put(key, expression);
+        }
+        return expression;
+    }
     
     static protected class HtmlNamespaceContext implements NamespaceContext {
         final static private String s_xhtml = "http://www.w3.org/1999/xhtml";
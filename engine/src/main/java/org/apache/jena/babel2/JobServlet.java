@@ -0,0 +1,504 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.jena.babel2.BabelReader;
+import org.apache.jena.babel2.BabelWriter;
+import org.apache.jena.babel2.StreamingBabelWriter;
+import org.apache.jena.babel2.TripleSink;
+import org.apache.jena.babel2.sink.LimitReachedException;
+import org.apache.jena.babel2.sink.Projection;
+import org.apache.jena.babel2.sink.SinkGraph;
+import org.apache.jena.babel2.util.Cancellation;
+import org.apache.jena.babel2.util.JsonWriter;
+import org.apache.jena.babel2.util.Progress;
+import org.apache.log4j.Logger;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Runs conversions too long for one HTTP request in the background.
+ * <ul>
+ * <li><code>POST /jobs?reader=...&amp;writer=...&amp;url=...</code> takes
+ * the parameters of the {@link TranslatorServlet}, queues the conversion
+ * and answers 202 at once with the job's status;</li>
+ * <li><code>GET /jobs/&lt;id&gt;</code> returns the job's status as JSON:
+ * queued, running, done or failed, with the bytes read and triples
+ * emitted so far;</li>
+ * <li><code>GET /jobs/&lt;id&gt;/result</code> downloads the result of a
+ * finished job, with support for <code>Range</code> requests, so that an
+ * interrupted download can be resumed;</li>
+ * <li><code>DELETE /jobs/&lt;id&gt;</code> cancels a job and deletes its
+ * result.</li>
+ * </ul>
+ * Jobs run on a pool of <code>job-threads</code> threads with up to
+ * <code>job-queue</code> jobs waiting (init parameters), and only read
+ * their input from URLs. Results are written to <code>job-directory</code>
+ * and deleted <code>job-ttl</code> minutes after the job ends.
+ */
+public class JobServlet extends TranslatorServlet {
+	private static final long serialVersionUID = -1808360942506254385L;
+	final static private Logger s_logger = Logger.getLogger(JobServlet.class);
+	
+	static protected class Job {
+		final String			m_id;
+		final RequestParameters	m_params;
+		final Locale			m_locale;
+		final Progress			m_progress = new Progress();
+		final Cancellation		m_cancellation = new Cancellation();
+		final File				m_file;
+		
+		volatile String			m_status = "queued";
+		volatile String			m_error;
+		volatile long			m_finished;
+		Future<?>				m_future;
+		
+		Job(String id, RequestParameters params, Locale locale, File file) {
+			m_id = id;
+			m_params = params;
+			m_locale = locale;
+			m_file = file;
+		}
+	}
+	
+	final private Map<String, Job>	m_jobs = new ConcurrentHashMap<String, Job>();
+	private ThreadPoolExecutor		m_executor;
+	private ScheduledExecutorService	m_cleaner;
+	private File					m_directory;
+	private long					m_ttl;
+	
+	@Override
+	public void init() throws ServletException {
+		super.init();
+		
+		int threads = getIntInitParameter("job-threads", 2);
+		int queue = getIntInitParameter("job-queue", 32);
+		m_ttl = getIntInitParameter("job-ttl", 60) * 60000L;
+		
+		String directory = getInitParameter("job-directory");
+		m_directory = directory != null ? new File(directory) : 
+			new File(System.getProperty("java.io.tmpdir"), "babel-jobs");
+		if (!m_directory.isDirectory() && !m_directory.mkdirs()) {
+			throw new ServletException("Cannot create job directory " + m_directory);
+		}
+		
+		final AtomicInteger count = new AtomicInteger();
+		m_executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, 
+			new ArrayBlockingQueue<Runnable>(queue), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "babel-job-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		
+		// expired jobs go every minute, whether or not new jobs come in
+		m_cleaner = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "babel-job-cleaner");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		m_cleaner.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					removeExpiredJobs();
+				} catch (Throwable e) {
+					// a failure must not cancel the later runs
+					s_logger.warn("Cannot remove expired jobs", e);
+				}
+			}
+		}, 1, 1, TimeUnit.MINUTES);
+	}
+	
+	@Override
+	public void destroy() {
+		m_cleaner.shutdownNow();
+		m_executor.shutdownNow();
+		for (Job job : m_jobs.values()) {
+			job.m_file.delete();
+		}
+		m_jobs.clear();
+		super.destroy();
+	}
+	
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) 
+			throws ServletException, IOException {
+		
+		if (request.getPathInfo() != null && !"/".equals(request.getPathInfo())) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		
+		RequestParameters params = RequestParameters.get(request);
+		BabelReader babelReader = params.has("reader") ? Babel.getReader(params.get("reader")) : null;
+		BabelWriter babelWriter = params.has("writer") ? Babel.getWriter(params.get("writer")) : null;
+		if (babelReader == null || babelWriter == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "No such reader or writer");
+			return;
+		} else if (!babelWriter.getSemanticType().getClass().isInstance(babelReader.getSemanticType())) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "The writer cannot take input from the reader");
+			return;
+		} else if (params.getAll("url").isEmpty()) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "No url in request");
+			return;
+		}
+		
+		String id = UUID.randomUUID().toString();
+		final Job job = new Job(id, params, request.getLocale(), new File(m_directory, id));
+		m_jobs.put(id, job);
+		try {
+			job.m_future = m_executor.submit(new Runnable() {
+				public void run() {
+					runJob(job);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			m_jobs.remove(id);
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many jobs");
+			return;
+		}
+		
+		response.setStatus(HttpServletResponse.SC_ACCEPTED);
+		response.setHeader("Location", request.getRequestURI().replaceAll("/$", "") + "/" + id);
+		writeStatus(response, job);
+	}
+	
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) 
+			throws ServletException, IOException {
+		
+		String[] path = parsePath(request);
+		Job job = path == null ? null : m_jobs.get(path[0]);
+		if (job == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+		} else if (path[1] == null) {
+			writeStatus(response, job);
+		} else if (!"result".equals(path[1])) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+		} else if (!"done".equals(job.m_status)) {
+			response.sendError(HttpServletResponse.SC_CONFLICT, "Job is " + job.m_status);
+		} else {
+			sendResult(request, response, job);
+		}
+	}
+	
+	@Override
+	protected void doDelete(HttpServletRequest request, HttpServletResponse response) 
+			throws ServletException, IOException {
+		
+		String[] path = parsePath(request);
+		Job job = path == null || path[1] != null ? null : m_jobs.remove(path[0]);
+		if (job == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		job.m_cancellation.cancel("Job deleted");
+		if (job.m_future != null) {
+			job.m_future.cancel(true);
+		}
+		job.m_file.delete();
+		response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+	}
+	
+	/**
+	 * Converts the job's URLs into its file, as the translator would, but
+	 * without the request, which is gone by the time the job runs.
+	 */
+	protected void runJob(Job job) {
+		job.m_status = "running";
+		try {
+			convert(job);
+			job.m_status = "done";
+		} catch (Throwable e) {
+			s_logger.warn("Job " + job.m_id + " failed", e);
+			job.m_error = e.getLocalizedMessage();
+			job.m_status = "failed";
+			job.m_file.delete();
+		} finally {
+			job.m_finished = System.currentTimeMillis();
+		}
+	}
+	
+	protected void convert(final Job job) throws Exception {
+		RequestParameters params = job.m_params;
+		final BabelReader babelReader = Babel.getReader(params.get("reader"));
+		BabelWriter babelWriter = Babel.getWriter(params.get("writer"));
+		final List<String> urls = params.getAll("url");
+		String modelBackend = params.get("model");
+		
+		final Properties readerProperties = params.getProperties("in-");
+		Properties writerProperties = params.getProperties("out-");
+		if (params.has("callback")) {
+			writerProperties.setProperty("callback", params.get("callback"));
+		}
+		Projection projection = getProjection(params);
+		Projection.set(readerProperties, projection);
+		Progress.set(readerProperties, job.m_progress);
+		Cancellation.set(readerProperties, job.m_cancellation);
+		Cancellation.set(writerProperties, job.m_cancellation);
+		
+		// the time allowed counts from when the job starts, not from when it was queued
+		int timeout = getTimeout(params);
+		if (timeout > 0) {
+			job.m_cancellation.setDeadline(System.currentTimeMillis() + timeout * 1000L);
+		}
+		
+		Babel.Plan plan = Babel.choosePlan(babelReader, babelWriter, 
+			readerProperties, writerProperties, modelBackend, urls.size() <= 1, projection);
+		
+		OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(job.m_file), 64 * 1024);
+		try {
+			Writer writer = babelWriter.takesWriter() ? 
+				job.m_cancellation.watch(new OutputStreamWriter(outputStream, "UTF-8")) : null;
+			if (plan == Babel.Plan.STREAM) {
+				StreamingBabelWriter streamingWriter = (StreamingBabelWriter) babelWriter;
+				TripleSink writerSink = pipeline(writer != null ?
+					streamingWriter.createSink(writer, writerProperties, job.m_locale) :
+					streamingWriter.createSink(outputStream, writerProperties, job.m_locale), params);
+				TripleSink sink = project(limit(job.m_progress.count(writerSink), params), readerProperties);
+				Model model = ModelFactory.createModelForGraph(new SinkGraph(sink));
+				try {
+					sink.start();
+					readURLs(babelReader, model, readerProperties, urls, job.m_locale);
+					sink.finish();
+				} finally {
+					cancel(writerSink);
+					model.close();
+				}
+			} else {
+				Model model = Babel.createModel(Babel.getModelBackend(plan, modelBackend));
+				try {
+					Model result = readLimited(babelReader, model, readerProperties, params, urls.size() <= 1, 
+						new Input() {
+							public void readInto(Model model) throws Exception {
+								readURLs(babelReader, model, readerProperties, urls, job.m_locale);
+							}
+						});
+					job.m_progress.addTriples(result.size());
+					
+					if (writer != null) {
+						babelWriter.write(writer, result, writerProperties, job.m_locale);
+					} else {
+						babelWriter.write(outputStream, result, writerProperties, job.m_locale);
+					}
+				} finally {
+					model.close();
+				}
+			}
+			if (writer != null) {
+				writer.flush();
+			}
+		} finally {
+			outputStream.close();
+		}
+	}
+	
+	protected void readURLs(
+		BabelReader 		converter,
+		Model				model,
+		Properties			readerProperties,
+		List<String>		urls,
+		Locale				locale
+	) throws Exception {
+		try {
+			for (String url : urls) {
+				if (url.length() > 0) {
+					readAndConvertURL(converter, model, readerProperties, url, locale);
+				}
+			}
+		} catch (Exception e) {
+			if (!LimitReachedException.isCause(e)) {
+				throw e;
+			}
+		}
+	}
+	
+	/**
+	 * Sends the whole result, or the single byte range asked for. Several
+	 * ranges are answered with the whole result, as HTTP allows.
+	 */
+	protected void sendResult(HttpServletRequest request, HttpServletResponse response, Job job) throws IOException {
+		long size = job.m_file.length();
+		long[] range = parseRange(request.getHeader("Range"), size);
+		
+		BabelWriter babelWriter = Babel.getWriter(job.m_params.get("writer"));
+		response.setContentType(babelWriter.getSerializationFormat().getMimetype());
+		if (babelWriter.takesWriter()) {
+			response.setCharacterEncoding("UTF-8");
+		}
+		response.setHeader("Accept-Ranges", "bytes");
+		
+		if (range != null && range.length == 0) {
+			response.setHeader("Content-Range", "bytes */" + size);
+			response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			return;
+		}
+		
+		long start = 0;
+		long length = size;
+		if (range != null) {
+			start = range[0];
+			length = range[1] - range[0] + 1;
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + size);
+		}
+		// setContentLength takes an int, and results may be larger
+		response.setHeader("Content-Length", Long.toString(length));
+		
+		FileInputStream inputStream = new FileInputStream(job.m_file);
+		try {
+			FileChannel channel = inputStream.getChannel();
+			WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+			while (length > 0) {
+				long n = channel.transferTo(start, length, out);
+				if (n <= 0) {
+					break;
+				}
+				start += n;
+				length -= n;
+			}
+		} finally {
+			inputStream.close();
+		}
+	}
+	
+	/**
+	 * Parses a <code>Range</code> header against a resource of the given
+	 * size. Returns the first and last byte of the range, null to send the
+	 * whole resource, or an empty array if the range cannot be satisfied.
+	 */
+	static protected long[] parseRange(String header, long size) {
+		if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+			return null;
+		}
+		String spec = header.substring(6).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return null;
+		}
+		
+		try {
+			long first;
+			long last;
+			if (dash == 0) {
+				long suffix = Long.parseLong(spec.substring(1).trim());
+				if (suffix <= 0 || size == 0) {
+					return new long[0];
+				}
+				first = Math.max(0, size - suffix);
+				last = size - 1;
+			} else {
+				first = Long.parseLong(spec.substring(0, dash).trim());
+				String end = spec.substring(dash + 1).trim();
+				last = end.length() == 0 ? size - 1 : Math.min(Long.parseLong(end), size - 1);
+				if (first >= size || last < first) {
+					return new long[0];
+				}
+			}
+			return new long[] { first, last };
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	protected void writeStatus(HttpServletResponse response, Job job) throws IOException {
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-cache");
+		
+		JsonWriter writer = new JsonWriter(new OutputStreamWriter(response.getOutputStream(), "UTF-8"), true);
+		writer.startObject();
+		writer.key("id").value(job.m_id);
+		writer.key("status").value(job.m_status);
+		writer.key("bytesRead").value(job.m_progress.getBytesRead());
+		writer.key("triples").value(job.m_progress.getTriples());
+		if ("done".equals(job.m_status)) {
+			writer.key("size").value(job.m_file.length());
+		} else if (job.m_error != null) {
+			writer.key("error").value(job.m_error);
+		}
+		writer.endObject();
+		writer.flush();
+	}
+	
+	/**
+	 * Returns the job id and what follows it in the path, if anything.
+	 */
+	static protected String[] parsePath(HttpServletRequest request) {
+		String path = request.getPathInfo();
+		if (path == null || path.length() < 2) {
+			return null;
+		}
+		String[] segments = path.substring(1).split("/", 2);
+		return new String[] { segments[0], segments.length > 1 && segments[1].length() > 0 ? segments[1] : null };
+	}
+	
+	protected void removeExpiredJobs() {
+		long now = System.currentTimeMillis();
+		Iterator<Job> i = m_jobs.values().iterator();
+		while (i.hasNext()) {
+			Job job = i.next();
+			if (job.m_finished > 0 && now - job.m_finished > m_ttl) {
+				i.remove();
+				job.m_file.delete();
+			}
+		}
+	}
+	
+	private int getIntInitParameter(String name, int defaultValue) {
+		String value = getInitParameter(name);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.runtime.Renderable;
+
+/**
+ * Holds the converted data of a preview. At most <code>limit</code>
+ * characters are kept: the first write past the limit marks the buffer as
+ * truncated and fails, so that the conversion stops early instead of
+ * producing data nobody will see.
+ * <p>
+ * Templates reference <code>$data.html</code> or <code>$data.javascript</code>,
+ * which escape the buffered characters straight into the template output
+ * instead of building escaped copies of the whole payload.
+ */
+public class PreviewBuffer extends Writer {
+
+    /**
+     * Thrown by writes past the limit. Not to be confused with the
+     * <code>LimitReachedException</code> of a <code>LimitSink</code>,
+     * which stops the reader rather than the writer.
+     */
+    static public class TruncatedException extends IOException {
+        private static final long serialVersionUID = -2395061866263123513L;
+
+        public TruncatedException(int limit) {
+            super("Preview limited to " + limit + " characters");
+        }
+    }
+
+    final private int   m_limit;
+    private char[]      m_chars = new char[4096];
+    private int         m_length = 0;
+    private boolean     m_truncated = false;
+
+    public PreviewBuffer(int limit) {
+        m_limit = limit;
+    }
+
+    public int getLimit() {
+        return m_limit;
+    }
+
+    public int getLength() {
+        return m_length;
+    }
+
+    public boolean isTruncated() {
+        return m_truncated;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (m_truncated) {
+            throw new TruncatedException(m_limit);
+        }
+
+        int count = Math.min(len, m_limit - m_length);
+        ensureCapacity(m_length + count);
+        System.arraycopy(cbuf, off, m_chars, m_length, count);
+        m_length += count;
+
+        if (count < len) {
+            m_truncated = true;
+            throw new TruncatedException(m_limit);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (m_truncated) {
+            throw new TruncatedException(m_limit);
+        }
+
+        int count = Math.min(len, m_limit - m_length);
+        ensureCapacity(m_length + count);
+        str.getChars(off, off + count, m_chars, m_length);
+        m_length += count;
+
+        if (count < len) {
+            m_truncated = true;
+            throw new TruncatedException(m_limit);
+        }
+    }
+
+    /**
+     * Drops what has been buffered, say to replace partial data with an
+     * error page.
+     */
+    public void reset() {
+        m_length = 0;
+        m_truncated = false;
+    }
+
+    @Override
+    public void flush() {
+        // nothing to flush
+    }
+
+    @Override
+    public void close() {
+        // keep the data around for rendering
+    }
+
+    public Renderable getHtml() {
+        return new Renderable() {
+            public boolean render(InternalContextAdapter context, Writer writer) throws IOException {
+                writeHtml(writer);
+                return true;
+            }
+        };
+    }
+
+    public Renderable getJavascript() {
+        return new Renderable() {
+            public boolean render(InternalContextAdapter context, Writer writer) throws IOException {
+                writeJavascript(writer);
+                return true;
+            }
+        };
+    }
+
+    public void writeHtml(Writer writer) throws IOException {
+        int start = 0;
+        for (int i = 0; i < m_length; i++) {
+            String entity;
+            switch (m_chars[i]) {
+            case '<': entity = "&lt;"; break;
+            case '>': entity = "&gt;"; break;
+            case '&': entity = "&amp;"; break;
+            case '"': entity = "&quot;"; break;
+            default: continue;
+            }
+            writer.write(m_chars, start, i - start);
+            writer.write(entity);
+            start = i + 1;
+        }
+        writer.write(m_chars, start, m_length - start);
+    }
+
+    public void writeJavascript(Writer writer) throws IOException {
+        int start = 0;
+        for (int i = 0; i < m_length; i++) {
+            char c = m_chars[i];
+            String escape;
+            switch (c) {
+            case '"':  escape = "\\\""; break;
+            case '\'': escape = "\\'"; break;
+            case '\\': escape = "\\\\"; break;
+            case '/':  escape = "\\/"; break;
+            case '\n': escape = "\\n"; break;
+            case '\r': escape = "\\r"; break;
+            case '\t': escape = "\\t"; break;
+            default:
+                if (c >= 0x20 && c < 0x7f) {
+                    continue;
+                }
+                escape = "\\u" + Integer.toHexString(0x10000 | c).substring(1).toUpperCase();
+            }
+            writer.write(m_chars, start, i - start);
+            writer.write(escape);
+            start = i + 1;
+        }
+        writer.write(m_chars, start, m_length - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(m_chars, 0, m_length);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > m_chars.length) {
+            char[] chars = new char[Math.min(Math.max(capacity, m_chars.length * 2), m_limit)];
+            System.arraycopy(m_chars, 0, chars, 0, m_length);
+            m_chars = chars;
+        }
+    }
+}
@@ -18,87 +18,141 @@
 
 package org.apache.jena.babel2;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.lang.StringUtils;
+import org.apache.jena.babel2.BabelReader;
 import org.apache.jena.babel2.BabelWriter;
-import org.apache.jena.babel2.util.Util;
+import org.apache.jena.babel2.StreamingBabelWriter;
 import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
-import org.apache.velocity.runtime.RuntimeConstants;
 
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * Converts the input like the {@link TranslatorServlet} and shows the result
+ * inside a preview template. At most <code>preview-limit</code> characters of
+ * converted data (taken from the request, else from the servlet init parameter
+ * of the same name) are produced; the conversion stops once they are reached.
+ * Likewise, at most <code>preview-items</code> items are read, unless the
+ * request asks for fewer with <code>limit</code>, so that a preview of a
+ * large source takes no longer than one of a small source.
+ */
 public class PreviewServlet extends TranslatorServlet {
 	private static final long serialVersionUID = -2862110707968976815L;
 
 	//final static private Logger s_logger = Logger.getLogger(PreviewServlet.class);
 	
-	private VelocityEngine m_ve;
+	final static private int s_defaultPreviewLimit = 1024 * 1024;
+	final static private int s_defaultPreviewItems = 1000;
+	
+	private int m_previewLimit = s_defaultPreviewLimit;
+	private int m_previewItems = s_defaultPreviewItems;
 	
 	@Override
 	public void init() throws ServletException {
 		super.init();
 		
-        try {
-    		File webapp = new File(getServletContext().getRealPath("/"));
-    		
-            Properties velocityProperties = new Properties();
-            velocityProperties.setProperty(
-                    RuntimeConstants.FILE_RESOURCE_LOADER_PATH, 
-                    new File(new File(webapp, "WEB-INF"), "templates").getAbsolutePath());
-    		
-            m_ve = new VelocityEngine();
-			m_ve.init(velocityProperties);
-		} catch (Exception e) {
-			e.printStackTrace();
+		String previewLimit = getInitParameter("preview-limit");
+		if (previewLimit != null) {
+			m_previewLimit = Integer.parseInt(previewLimit);
+		}
+		
+		String previewItems = getInitParameter("preview-items");
+		if (previewItems != null) {
+			m_previewItems = Integer.parseInt(previewItems);
 		}
 	}
 	
+	@Override
+	protected int getLimit(RequestParameters params) {
+		int limit = super.getLimit(params);
+		if (m_previewItems < 0) {
+			return limit;
+		}
+		return limit < 0 ? m_previewItems : Math.min(limit, m_previewItems);
+	}
+	
+	/**
+	 * The output goes into the preview template, so it is always buffered.
+	 */
+	@Override
+	protected boolean streamsToResponse() {
+		return false;
+	}
+	
 	@Override
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-        String template = null;
-        
-        String[] params = StringUtils.splitPreserveAllTokens(request.getQueryString(), '&');
-        for (int i = 0; i < params.length; i++) {
-            String param = params[i];
-            int equalIndex = param.indexOf('=');
-
-            if (equalIndex >= 0) {
-                String name = param.substring(0, equalIndex);
-                if ("template".equals(name)) {
-                	template = Util.decode(param.substring(equalIndex + 1));
-                	break;
-                }
-            }
-        }
+        RequestParameters params = RequestParameters.get(request);
+        String template = params.get("template");
+        int previewLimit = Math.min(m_previewLimit, params.getInt("preview-limit", m_previewLimit));
 
-        StringWriter writer = new StringWriter();
+        PreviewBuffer buffer = new PreviewBuffer(previewLimit);
 		try {
-			ResponseInfo responseInfo = internalService(request, response, params, writer);
+			ResponseInfo responseInfo = internalService(request, response, params, buffer);
 			if (responseInfo.m_status != HttpServletResponse.SC_OK) {
-				writeBufferedResponse(response, writer, responseInfo);
+				writeBufferedResponse(response, buffer, responseInfo);
 			} else {
 	            VelocityContext vcContext = new VelocityContext();
 		            
-	            vcContext.put("data", writer.toString());
+	            vcContext.put("data", buffer);
+	            vcContext.put("truncated", buffer.isTruncated());
 	            vcContext.put("utilities", new PreviewUtilities());
 		            
-	    		response.setCharacterEncoding("UTF-8");
 	    		response.setContentType("text/html");
 	    		response.setStatus(HttpServletResponse.SC_OK);
 	    		
-	            m_ve.mergeTemplate(template, vcContext, response.getWriter());
+	            TemplateService.getInstance().render(template, vcContext, response);
 			}
 		} catch (Exception e) {
-			writeError(writer, "Internal error", e);
-		} finally {
-			writer.close();
+			returnStackTrace(e, response);
+		}
+	}
+	
+	/**
+	 * Running into the preview limit is the expected way for a large
+	 * conversion to end, so it is not reported as an error.
+	 */
+	@Override
+	protected void writeResult(
+		BabelWriter 		babelWriter, 
+		Model               model,
+		Properties 			writerProperties,
+		Writer				writer,
+		Locale				locale
+	) throws Exception {
+		try {
+			super.writeResult(babelWriter, model, writerProperties, writer, locale);
+		} catch (Exception e) {
+			if (!(writer instanceof PreviewBuffer) || !((PreviewBuffer) writer).isTruncated()) {
+				throw e;
+			}
+		}
+	}
+	
+	@Override
+	protected void streamResult(
+		BabelReader 			babelReader,
+		StreamingBabelWriter 	babelWriter, 
+		Properties				readerProperties,
+		Properties 				writerProperties,
+		HttpServletRequest		request,
+		List<String>			urls,
+		Writer					writer,
+		Locale					locale
+	) throws Exception {
+		try {
+			super.streamResult(babelReader, babelWriter, readerProperties, writerProperties, request, urls, writer, locale);
+		} catch (Exception e) {
+			if (!(writer instanceof PreviewBuffer) || !((PreviewBuffer) writer).isTruncated()) {
+				throw e;
+			}
 		}
 	}
 	
@@ -28,8 +28,6 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.lang.StringUtils;
-import org.apache.jena.babel2.util.Util;
 
 import com.oreilly.servlet.multipart.MultipartParser;
 import com.oreilly.servlet.multipart.ParamPart;
@@ -44,28 +42,7 @@ public class ReflectorServlet extends HttpServlet {
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) 
 			throws ServletException, IOException {
 		
-		String mimetype = "text/plain";
-		
-		/*
-		 * Parse parameters
-		 */
-        String[] params = StringUtils.splitPreserveAllTokens(request.getQueryString(), '&');
-        for (int i = 0; i < params.length; i++) {
-            String param = params[i];
-            int equalIndex = param.indexOf('=');
-
-            if (equalIndex >= 0) {
-                String rawName = param.substring(0, equalIndex);
-                String rawValue = param.substring(equalIndex + 1);
-
-                String name = Util.decode(rawName);
-                String value = Util.decode(rawValue);
-
-				if (name.equals("mimetype")) {
-					mimetype = value;
-				}
-            }
-		}
+		String mimetype = RequestParameters.get(request).get("mimetype", "text/plain");
 		
 		response.setCharacterEncoding("UTF-8");
 		response.setContentType(mimetype);
@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.jena.babel2.util.PercentCodec;
+
+/**
+ * The parameters of a request's query string, parsed once and kept in a
+ * request attribute so that servlets (and the servlets they extend) share
+ * them. Parameters keep their order; a name may occur several times.
+ * Pieces without an <code>=</code> are ignored, and a missing query string
+ * gives no parameters.
+ */
+public class RequestParameters {
+	final static private String s_attribute = RequestParameters.class.getName();
+	
+	final private List<String> m_names = new ArrayList<String>();
+	final private List<String> m_values = new ArrayList<String>();
+	
+	/**
+	 * Returns the parameters of the request, parsing them on first use.
+	 */
+	static public RequestParameters get(HttpServletRequest request) {
+		Object parameters = request.getAttribute(s_attribute);
+		if (!(parameters instanceof RequestParameters)) {
+			parameters = parse(request.getQueryString());
+			request.setAttribute(s_attribute, parameters);
+		}
+		return (RequestParameters) parameters;
+	}
+	
+	static public RequestParameters parse(String queryString) {
+		RequestParameters parameters = new RequestParameters();
+		if (queryString == null) {
+			return parameters;
+		}
+		
+		int length = queryString.length();
+		int start = 0;
+		while (start <= length) {
+			int end = queryString.indexOf('&', start);
+			if (end < 0) {
+				end = length;
+			}
+			int equal = queryString.indexOf('=', start);
+			if (equal >= 0 && equal < end) {
+				parameters.m_names.add(decode(queryString.substring(start, equal)));
+				parameters.m_values.add(decode(queryString.substring(equal + 1, end)));
+			}
+			start = end + 1;
+		}
+		return parameters;
+	}
+	
+	public int size() {
+		return m_names.size();
+	}
+	
+	public String getName(int index) {
+		return m_names.get(index);
+	}
+	
+	public String getValue(int index) {
+		return m_values.get(index);
+	}
+	
+	public boolean has(String name) {
+		return m_names.indexOf(name) >= 0;
+	}
+	
+	/**
+	 * Returns the first value of a parameter, or null.
+	 */
+	public String get(String name) {
+		int index = m_names.indexOf(name);
+		return index < 0 ? null : m_values.get(index);
+	}
+	
+	public String get(String name, String defaultValue) {
+		String value = get(name);
+		return value == null ? defaultValue : value;
+	}
+	
+	public List<String> getAll(String name) {
+		List<String> values = null;
+		for (int i = 0; i < m_names.size(); i++) {
+			if (m_names.get(i).equals(name)) {
+				if (values == null) {
+					values = new ArrayList<String>();
+				}
+				values.add(m_values.get(i));
+			}
+		}
+		return values == null ? Collections.<String>emptyList() : values;
+	}
+	
+	public int getInt(String name, int defaultValue) {
+		String value = get(name);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				// fall through
+			}
+		}
+		return defaultValue;
+	}
+	
+	public boolean getBoolean(String name, boolean defaultValue) {
+		String value = get(name);
+		return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+	}
+	
+	/**
+	 * Returns the parameters whose names start with the prefix, such as
+	 * "in-" for reader properties, with the prefix stripped. Later values
+	 * win over earlier ones.
+	 */
+	public Properties getProperties(String prefix) {
+		Properties properties = new Properties();
+		for (int i = 0; i < m_names.size(); i++) {
+			String name = m_names.get(i);
+			if (name.startsWith(prefix)) {
+				properties.setProperty(name.substring(prefix.length()), m_values.get(i));
+			}
+		}
+		return properties;
+	}
+	
+	/**
+	 * Returns a key that is the same for requests with the same parameters,
+	 * in whatever order, except for those named in <code>ignored</code>.
+	 * The values of a name keep their order, since it may matter.
+	 */
+	public String toKey(Collection<String> ignored) {
+		List<Integer> indices = new ArrayList<Integer>();
+		for (int i = 0; i < m_names.size(); i++) {
+			if (!ignored.contains(m_names.get(i))) {
+				indices.add(i);
+			}
+		}
+		// a stable sort, so that repeated names keep their values' order
+		Collections.sort(indices, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return m_names.get(a).compareTo(m_names.get(b));
+			}
+		});
+		
+		StringBuilder key = new StringBuilder();
+		for (int i : indices) {
+			key.append(m_names.get(i)).append('\u0000').append(m_values.get(i)).append('\u0001');
+		}
+		return key.toString();
+	}
+	
+	static private String decode(String s) {
+		try {
+			return PercentCodec.decode(s);
+		} catch (IllegalArgumentException e) {
+			return s; // malformed escapes are kept as they are
+		}
+	}
+}
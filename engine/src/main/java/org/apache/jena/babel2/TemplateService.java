@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
+
+/**
+ * The Velocity engine shared by all servlets. Templates are loaded from the
+ * <code>templates/</code> folder on the classpath and parsed once; only in dev
+ * mode (system property <code>babel.dev=true</code>) are they looked up again
+ * on each use so that edits show up without a restart.
+ */
+public class TemplateService {
+    final static private String s_encoding = "UTF-8";
+    final static private String s_prefix = "templates/";
+
+    static private TemplateService s_singleton;
+
+    final private VelocityEngine m_ve;
+    final private boolean m_devMode;
+    final private ConcurrentMap<String, Template> m_templates = new ConcurrentHashMap<String, Template>();
+
+    static public synchronized TemplateService getInstance() throws Exception {
+        if (s_singleton == null) {
+            s_singleton = new TemplateService(Boolean.getBoolean("babel.dev"));
+        }
+        return s_singleton;
+    }
+
+    protected TemplateService(boolean devMode) throws Exception {
+        m_devMode = devMode;
+
+        Properties velocityProperties = new Properties();
+        velocityProperties.setProperty(RuntimeConstants.RESOURCE_LOADER, "class");
+        velocityProperties.setProperty("class.resource.loader.class", ClasspathResourceLoader.class.getName());
+        velocityProperties.setProperty("class.resource.loader.cache", Boolean.toString(!devMode));
+        velocityProperties.setProperty(RuntimeConstants.INPUT_ENCODING, s_encoding);
+        velocityProperties.setProperty(RuntimeConstants.OUTPUT_ENCODING, s_encoding);
+
+        m_ve = new VelocityEngine();
+        m_ve.init(velocityProperties);
+    }
+
+    public boolean isDevMode() {
+        return m_devMode;
+    }
+
+    public Template getTemplate(String name) throws Exception {
+        if (m_devMode) {
+            return m_ve.getTemplate(s_prefix + name, s_encoding);
+        }
+
+        Template template = m_templates.get(name);
+        if (template == null) {
+            template = m_ve.getTemplate(s_prefix + name, s_encoding);
+            m_templates.putIfAbsent(name, template);
+        }
+        return template;
+    }
+
+    public void render(String name, VelocityContext context, Writer writer) throws Exception {
+        getTemplate(name).merge(context, writer);
+    }
+
+    /**
+     * Renders a template straight into the response body as UTF-8 text.
+     * The caller is responsible for setting the status and content type.
+     */
+    public void render(String name, VelocityContext context, HttpServletResponse response) throws Exception {
+        response.setCharacterEncoding(s_encoding);
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), s_encoding));
+        try {
+            render(name, context, writer);
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    static private void closeQuietly(Writer writer) {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            // the client went away, nothing left to do
+        }
+    }
+}
@@ -18,38 +18,56 @@
 
 package org.apache.jena.babel2;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.jena.babel2.BabelReader;
 import org.apache.jena.babel2.BabelWriter;
+import org.apache.jena.babel2.Capabilities;
 import org.apache.jena.babel2.SemanticType;
-import org.apache.jena.babel2.util.Util;
+import org.apache.jena.babel2.StreamingBabelWriter;
+import org.apache.jena.babel2.TripleSink;
+import org.apache.jena.babel2.sink.GraphSink;
+import org.apache.jena.babel2.sink.LimitReachedException;
+import org.apache.jena.babel2.sink.LimitSink;
+import org.apache.jena.babel2.sink.PipelinedSink;
+import org.apache.jena.babel2.sink.Projection;
+import org.apache.jena.babel2.sink.ProjectionSink;
+import org.apache.jena.babel2.sink.SinkGraph;
+import org.apache.jena.babel2.sink.Sinks;
+import org.apache.jena.babel2.util.Cancellation;
+import org.apache.jena.babel2.util.CancelledException;
+import org.apache.jena.babel2.util.Progress;
+import org.apache.jena.babel2.util.SingleFlight;
 import org.apache.log4j.Logger;
 import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
-import org.apache.velocity.runtime.RuntimeConstants;
 
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
@@ -62,56 +80,100 @@ public class TranslatorServlet extends HttpServlet {
 	final static private long serialVersionUID = 2083937775584527297L;
 	final static private Logger s_logger = Logger.getLogger(TranslatorServlet.class);
 	
-    private VelocityEngine m_ve;
-    
     static protected class ResponseInfo {
     	int		m_status = HttpServletResponse.SC_OK;
     	String	m_contentEncoding = "UTF-8";
     	String	m_mimeType = "text/html";
+    	byte[]	m_body; // the output of writers that do not take a Writer
+    	boolean	m_sent; // the output went straight to the response
+    }
+    
+    /**
+     * A finished conversion, shared by the requests coalesced into it.
+     */
+    static protected class BufferedResult {
+    	ResponseInfo	m_responseInfo;
+    	StringWriter	m_writer;
     }
     
+    /**
+     * Reads the input of a conversion into a model, stopping quietly if a
+     * {@link LimitSink} reaches its limit.
+     */
+    static protected interface Input {
+    	public void readInto(Model model) throws Exception;
+    }
+    
+    /*
+     * Left out of the key requests are coalesced on: "_" is the cache
+     * buster some script libraries add, which would set apart requests
+     * that are otherwise the same.
+     */
+    final static private Set<String> s_uncoalescedParameters = Collections.singleton("_");
+    
+    final static private int s_defaultMaxTimeout = 300;
+    final static private int s_defaultCoalescedWait = 300;
+    
+    final private SingleFlight<String, BufferedResult> m_flights = new SingleFlight<String, BufferedResult>();
+    private boolean m_coalesce = false;
+    private int m_maxTimeout = s_defaultMaxTimeout;
+    
+    /**
+     * Concurrent GET requests for the same conversion are coalesced into
+     * one if the <code>coalesce</code> init parameter is "true". Coalesced
+     * results are buffered whole, so this suits deployments that serve
+     * the same small conversions to many clients; otherwise conversions
+     * stream into their responses as they go. The
+     * <code>max-timeout</code> init parameter caps, in seconds, how long a
+     * conversion may run, five minutes by default; 0 lifts the cap.
+     */
     @Override
     public void init() throws ServletException {
-        super.init();
-        
-        try {
-            File webapp = new File(getServletContext().getRealPath("/"));
-            
-            Properties velocityProperties = new Properties();
-            velocityProperties.setProperty(
-                    RuntimeConstants.FILE_RESOURCE_LOADER_PATH, 
-                    new File(new File(webapp, "WEB-INF"), "templates").getAbsolutePath());
-            
-            m_ve = new VelocityEngine();
-            m_ve.init(velocityProperties);
-        } catch (Exception e) {
-            s_logger.error("Error initializing TranslatorServlet", e);
-        }
+    	super.init();
+    	m_coalesce = "true".equals(getInitParameter("coalesce"));
+    	
+    	String maxTimeout = getInitParameter("max-timeout");
+    	if (maxTimeout != null) {
+    		m_maxTimeout = Integer.parseInt(maxTimeout.trim());
+    	}
     }
     
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) 
     		throws ServletException, IOException {
     	
-        String[] params = StringUtils.splitPreserveAllTokens(request.getQueryString(), '&');
-        StringWriter writer = new StringWriter();
-		try {
-			writeBufferedResponse(response, writer, internalService(request, response, params, writer));
-        } catch (Exception e) {
-        	returnStackTrace(e, response);
-		} finally {
-			writer.close();
-		}
+        RequestParameters params = RequestParameters.get(request);
+        if (m_coalesce && params.has("url")) {
+        	coalescedGet(request, response, params);
+        	return;
+        }
+        
+        uncoalescedService(request, response, params);
     }
     
 	@Override
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) 
 			throws ServletException, IOException {
 		
-        String[] params = StringUtils.splitPreserveAllTokens(request.getQueryString(), '&');
+        uncoalescedService(request, response, RequestParameters.get(request));
+	}
+	
+	/**
+	 * Serves a request of its own. Conversions that stream are written
+	 * straight to the response if {@link #streamsToResponse()}; the rest,
+	 * and errors found before converting, are buffered.
+	 */
+	protected void uncoalescedService(
+		HttpServletRequest 	request, 
+		HttpServletResponse response, 
+		RequestParameters 	params
+	) throws ServletException, IOException {
         StringWriter writer = new StringWriter();
 		try {
-			writeBufferedResponse(response, writer, internalService(request, response, params, writer));
+			ResponseInfo responseInfo = internalService(request, response, params, writer, streamsToResponse());
+			if (!responseInfo.m_sent) {
+				writeBufferedResponse(response, writer, responseInfo);
+			}
         } catch (Exception e) {
         	returnStackTrace(e, response);
 		} finally {
@@ -119,7 +181,73 @@ public class TranslatorServlet extends HttpServlet {
 		}
 	}
 	
+	/**
+	 * Whether conversions that stream may be written straight to the
+	 * response, so that big exports start arriving at once and take no
+	 * memory. Servlets that work on the whole output turn this off.
+	 */
+	protected boolean streamsToResponse() {
+		return true;
+	}
+	
+	/**
+	 * Converts once for all the requests with the same parameters and
+	 * locale that arrive while the conversion runs, and sends each of them
+	 * the result. Only requests that fetch their input from URLs are
+	 * coalesced, as others have nothing to convert or read their request
+	 * body. A request that joins a conversion waits for it as long as the
+	 * conversion may run, and then gets a 503: the conversion is stuck, and
+	 * running it again would most likely get stuck too.
+	 */
+	protected void coalescedGet(
+		final HttpServletRequest 	request, 
+		final HttpServletResponse 	response, 
+		final RequestParameters 	params
+	) throws ServletException, IOException {
+		String key = params.toKey(s_uncoalescedParameters) + '\u0002' + request.getLocale();
+		try {
+			BufferedResult result = m_flights.execute(key, new Callable<BufferedResult>() {
+				public BufferedResult call() throws Exception {
+					BufferedResult result = new BufferedResult();
+					result.m_writer = new StringWriter();
+					result.m_responseInfo = internalService(request, response, params, result.m_writer);
+					return result;
+				}
+			}, getCoalescedWait(params), TimeUnit.SECONDS);
+			writeBufferedResponse(response, result.m_writer, result.m_responseInfo);
+		} catch (TimeoutException e) {
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, 
+				"The same conversion is taking too long, try again later");
+		} catch (Exception e) {
+			returnStackTrace(e, response);
+		}
+	}
+	
+	/**
+	 * Returns how many seconds a request waits for the conversion it joined:
+	 * the conversion's timeout, with a little slack for it to be noticed,
+	 * or <code>s_defaultCoalescedWait</code> if there is none.
+	 */
+	protected int getCoalescedWait(RequestParameters params) {
+		int timeout = getTimeout(params);
+		return timeout > 0 ? timeout + 5 : s_defaultCoalescedWait;
+	}
+	
 	protected void writeBufferedResponse(HttpServletResponse response, Writer writer, ResponseInfo responseInfo) throws Exception {
+		if (responseInfo.m_body != null) {
+			response.setContentType(responseInfo.m_mimeType);
+			response.setStatus(responseInfo.m_status);
+			response.setContentLength(responseInfo.m_body.length);
+			
+			OutputStream outputStream = response.getOutputStream();
+			try {
+				outputStream.write(responseInfo.m_body);
+			} finally {
+				outputStream.close();
+			}
+			return;
+		}
+		
 		response.setCharacterEncoding(responseInfo.m_contentEncoding);
 		response.setContentType(responseInfo.m_mimeType);
 		response.setStatus(responseInfo.m_status);
@@ -156,48 +284,36 @@ public class TranslatorServlet extends HttpServlet {
 	protected ResponseInfo internalService(
 		HttpServletRequest 	request, 
 		HttpServletResponse response,
-		String[]			params,
+		RequestParameters	params,
 		Writer				writer
+	) {
+		return internalService(request, response, params, writer, false);
+	}
+	
+	/**
+	 * Converts as the request asks, writing the result or an error page to
+	 * <code>writer</code>, or, if <code>direct</code> and the conversion
+	 * streams, to the response itself, which is then marked as sent.
+	 */
+	protected ResponseInfo internalService(
+		HttpServletRequest 	request, 
+		HttpServletResponse response,
+		RequestParameters	params,
+		Writer				writer,
+		boolean				direct
 	) {
 		ResponseInfo responseInfo = new ResponseInfo();
 		
-		List<String>	urls = new ArrayList<String>();
-		Properties 		readerProperties = new Properties();
-		Properties 		writerProperties = new Properties();
-		String			readerName = null;
-		String			writerName = null;
-		String			mimetype = null;
+		List<String>	urls = params.getAll("url");
+		Properties 		readerProperties = params.getProperties("in-");
+		Properties 		writerProperties = params.getProperties("out-");
+		String			readerName = params.get("reader");
+		String			writerName = params.get("writer");
+		String			mimetype = params.get("mimetype");
+		String			modelBackend = params.get("model");
 		
-		/*
-		 * Parse parameters
-		 */
-        for (int i = 0; i < params.length; i++) {
-            String param = params[i];
-            int equalIndex = param.indexOf('=');
-
-            if (equalIndex >= 0) {
-                String rawName = param.substring(0, equalIndex);
-                String rawValue = param.substring(equalIndex + 1);
-
-                String name = Util.decode(rawName);
-                String value = Util.decode(rawValue);
-
-				if (name.startsWith("in-")) {
-					readerProperties.setProperty(name.substring(3), value);
-				} else if (name.startsWith("out-")) {
-					writerProperties.setProperty(name.substring(4), value);
-				} else if (name.equals("reader")) {
-					readerName = value;
-				} else if (name.equals("writer")) {
-					writerName = value;
-				} else if (name.equals("mimetype")) {
-					mimetype = value;
-				} else if (name.equals("url")) {
-					urls.add(value);
-                } else if (name.equals("callback")) {
-                    writerProperties.setProperty(name, value);
-				}
-            }
+		if (params.has("callback")) {
+			writerProperties.setProperty("callback", params.get("callback"));
 		}
 		
 		/*
@@ -247,18 +363,77 @@ public class TranslatorServlet extends HttpServlet {
 		}
 		
 		/*
-		 * Read in data, convert, and write result out
+		 * Read in data, convert, and write result out. Writers that can
+		 * take the triples as they are read do so, unless a particular
+		 * model backend has been asked for.
 		 */
-		Model model = ModelFactory.createDefaultModel();
 		Locale locale = request.getLocale();
+		Projection projection = getProjection(params);
+		Projection.set(readerProperties, projection);
+		
+		Cancellation cancellation = createCancellation(params);
+		Cancellation.set(readerProperties, cancellation);
+		Cancellation.set(writerProperties, cancellation);
+		
+		Babel.Plan plan = Babel.choosePlan(babelReader, babelWriter, 
+			readerProperties, writerProperties, modelBackend, urls.size() <= 1, projection);
+		modelBackend = Babel.getModelBackend(plan, modelBackend);
+		
+		if (direct && plan == Babel.Plan.STREAM) {
+			setContentEncodingAndMimetype(responseInfo, babelWriter, mimetype);
+			
+			try {
+				sendStreamedResult(babelReader, (StreamingBabelWriter) babelWriter, 
+					readerProperties, writerProperties, request, response, urls, responseInfo, locale);
+			} catch (IOException e) {
+				s_logger.warn("Cannot send the result, the client may have gone", e);
+			}
+			return responseInfo;
+		} else if (!babelWriter.takesWriter()) {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			try {
+				setContentEncodingAndMimetype(responseInfo, babelWriter, mimetype);
+				
+				writeBinaryResult(babelReader, babelWriter, plan, modelBackend, 
+					readerProperties, writerProperties, request, urls, outputStream, locale);
+				
+				responseInfo.m_body = outputStream.toByteArray();
+			} catch (Throwable e) {
+				setErrorStatus(responseInfo, e);
+	            writeError(writer, e.getLocalizedMessage(), e);
+			}
+			return responseInfo;
+		} else if (plan == Babel.Plan.STREAM) {
+			try {
+				setContentEncodingAndMimetype(responseInfo, babelWriter, mimetype);
+				
+				streamResult(babelReader, (StreamingBabelWriter) babelWriter, 
+					readerProperties, writerProperties, request, urls, writer, locale);
+			} catch (Throwable e) {
+				// drop the partial output
+				if (writer instanceof StringWriter) {
+					((StringWriter) writer).getBuffer().setLength(0);
+				} else if (writer instanceof PreviewBuffer) {
+					((PreviewBuffer) writer).reset();
+				}
+				setErrorStatus(responseInfo, e);
+	            writeError(writer, e.getLocalizedMessage(), e);
+			}
+			return responseInfo;
+		}
+		
+		Model model = Babel.createModel(modelBackend);
 		try {
-			readAndConvert(babelReader, model, readerProperties, request, urls, locale);
+			Model result = readAndConvertLimited(babelReader, model, readerProperties, request, urls, locale);
 			
 			setContentEncodingAndMimetype(responseInfo, babelWriter, mimetype);
 			
-			writeResult(babelWriter, model, writerProperties, writer, locale);
+			writeResult(babelWriter, result, writerProperties, writer, locale);
 		} catch (Throwable e) {
+			setErrorStatus(responseInfo, e);
             writeError(writer, e.getLocalizedMessage(), e);
+		} finally {
+			model.close();
 		}
 		
 		return responseInfo;
@@ -290,14 +465,14 @@ public class TranslatorServlet extends HttpServlet {
 					if (converter.takesReader()) {
 						Reader reader = new InputStreamReader(filePart.getInputStream());
 						try {
-							converter.read(reader, model, readerProperties, locale);
+							Babel.read(converter, reader, model, readerProperties, locale);
 						} finally {
 							reader.close();
 						}
 					} else {
 						InputStream inputStream = filePart.getInputStream();
 						try {
-							converter.read(inputStream, model, readerProperties, locale);
+							Babel.read(converter, inputStream, model, readerProperties, locale);
 						} finally {
 							inputStream.close();
 						}
@@ -309,7 +484,7 @@ public class TranslatorServlet extends HttpServlet {
 						if (converter.takesReader()) {
 							StringReader reader = new StringReader(paramPart.getStringValue());
 							try {
-								converter.read(reader, model, readerProperties, locale);
+								Babel.read(converter, reader, model, readerProperties, locale);
 							} finally {
 								reader.close();
 							}
@@ -331,6 +506,96 @@ public class TranslatorServlet extends HttpServlet {
 		}
 	}
 	
+	/**
+	 * Reads like {@link #readAndConvert}, except that a {@link LimitSink}
+	 * reaching its limit ends the reading rather than failing it.
+	 */
+	protected void readUpToLimit(
+		BabelReader 		converter,
+		Model				model,
+		Properties			readerProperties,
+		HttpServletRequest	request,
+		List<String>		urls,
+		Locale				locale
+	) throws Exception {
+		try {
+			readAndConvert(converter, model, readerProperties, request, urls, locale);
+		} catch (Exception e) {
+			if (!LimitReachedException.isCause(e)) {
+				throw e;
+			}
+		}
+	}
+	
+	/**
+	 * Reads the request's input into a model that is to be materialized,
+	 * and returns the model to write, as {@link #readLimited} does.
+	 */
+	protected Model readAndConvertLimited(
+		final BabelReader 			converter,
+		Model						model,
+		final Properties			readerProperties,
+		final HttpServletRequest	request,
+		final List<String>			urls,
+		final Locale				locale
+	) throws Exception {
+		return readLimited(converter, model, readerProperties, RequestParameters.get(request), urls.size() <= 1, 
+			new Input() {
+				public void readInto(Model model) throws Exception {
+					readUpToLimit(converter, model, readerProperties, request, urls, locale);
+				}
+			});
+	}
+	
+	/**
+	 * Reads into a model that is to be materialized, and returns the model
+	 * to write: what was read, projected, then cut to the request's offset
+	 * and limit, so that the limit counts what the projection keeps, as
+	 * when streaming. The projection and limit are applied as the triples
+	 * are read when they can be. A reader that looks into the model it
+	 * reads into, or a type filter on triples that are not grouped by
+	 * subject, needs everything read first; then the window is copied out
+	 * of the projected model.
+	 */
+	protected Model readLimited(
+		BabelReader 		converter,
+		Model				model,
+		Properties			readerProperties,
+		RequestParameters	params,
+		boolean				singleInput,
+		Input				input
+	) throws Exception {
+		Projection projection = Projection.get(readerProperties);
+		TripleSink limitSink = limit(new GraphSink(model.getGraph()), params);
+		if (!(limitSink instanceof LimitSink)) {
+			input.readInto(model);
+			return Babel.project(model, projection);
+		}
+		
+		Capabilities.Ordering ordering = Capabilities.forReader(converter, readerProperties).getOrdering();
+		boolean grouped = singleInput && ordering == Capabilities.Ordering.SUBJECT_GROUPED;
+		if (ordering != Capabilities.Ordering.GRAPH && 
+			(projection == null || !projection.hasTypeFilter() || grouped)) {
+			TripleSink sink = project(limitSink, readerProperties);
+			sink.start();
+			input.readInto(ModelFactory.createModelForGraph(new SinkGraph(sink)));
+			sink.finish();
+			return model;
+		}
+		
+		input.readInto(model);
+		
+		Model window = ModelFactory.createDefaultModel();
+		try {
+			Sinks.emit(Babel.project(model, projection), limit(new GraphSink(window.getGraph()), params));
+		} catch (Exception e) {
+			if (!LimitReachedException.isCause(e)) {
+				throw e;
+			}
+		}
+		return window;
+	}
+	
 	protected void readAndConvertURL(
 		BabelReader 		converter,
 		Model               model,
@@ -343,6 +608,7 @@ public class TranslatorServlet extends HttpServlet {
 		try {
 			connection = new URL(url).openConnection();
 			connection.setConnectTimeout(5000);
+			connection.setReadTimeout(30000);
 			connection.connect();
 		} catch (Exception e) {
 			throw new BabelException("Cannot connect to " + url, e);
@@ -358,6 +624,11 @@ public class TranslatorServlet extends HttpServlet {
 			throw new BabelException("Cannot retrieve content from " + url, e);
         }
         
+        Progress progress = Progress.get(readerProperties);
+        if (progress != null) {
+			inputStream = progress.count(inputStream);
+        }
+        
         try {
 			if (converter.takesReader()) {
 				String encoding = connection.getContentEncoding();
@@ -365,10 +636,16 @@ public class TranslatorServlet extends HttpServlet {
 				Reader reader = new InputStreamReader(
 					inputStream, (encoding == null) ? "ISO-8859-1" : encoding);
 							
-				converter.read(reader, model, readerProperties, locale);
+				Babel.read(converter, reader, model, readerProperties, locale);
 			} else {
-				converter.read(inputStream, model, readerProperties, locale);
+				Babel.read(converter, inputStream, model, readerProperties, locale);
+			}
+        } catch (Exception e) {
+			// don't download the rest of what won't be read
+			if (LimitReachedException.isCause(e) && connection instanceof HttpURLConnection) {
+				((HttpURLConnection) connection).disconnect();
 			}
+			throw e;
         } finally {
 			inputStream.close();
         }
@@ -383,6 +660,230 @@ public class TranslatorServlet extends HttpServlet {
 	) throws Exception {
 		babelWriter.write(writer, model, writerProperties, locale);
 	}
+	
+	/**
+	 * Converts for a writer that produces bytes rather than characters,
+	 * streaming when it can as {@link #streamResult} does.
+	 */
+	protected void writeBinaryResult(
+		BabelReader 			babelReader,
+		BabelWriter 			babelWriter, 
+		Babel.Plan				plan,
+		String					modelBackend,
+		Properties				readerProperties,
+		Properties 				writerProperties,
+		HttpServletRequest		request,
+		List<String>			urls,
+		OutputStream			outputStream,
+		Locale					locale
+	) throws Exception {
+		if (plan == Babel.Plan.STREAM) {
+			TripleSink writerSink = pipeline(((StreamingBabelWriter) babelWriter).createSink(outputStream, writerProperties, locale), RequestParameters.get(request));
+			TripleSink sink = project(limit(writerSink, RequestParameters.get(request)), readerProperties);
+			Model model = ModelFactory.createModelForGraph(new SinkGraph(sink));
+			try {
+				sink.start();
+				readUpToLimit(babelReader, model, readerProperties, request, urls, locale);
+				sink.finish();
+			} finally {
+				cancel(writerSink);
+				model.close();
+			}
+		} else {
+			Model model = Babel.createModel(modelBackend);
+			try {
+				Model result = readAndConvertLimited(babelReader, model, readerProperties, request, urls, locale);
+				babelWriter.write(outputStream, result, writerProperties, locale);
+			} finally {
+				model.close();
+			}
+		}
+	}
+	
+	/**
+	 * Reads the input straight into the writer's sink, without
+	 * materializing a model in between.
+	 */
+	protected void streamResult(
+		BabelReader 			babelReader,
+		StreamingBabelWriter 	babelWriter, 
+		Properties				readerProperties,
+		Properties 				writerProperties,
+		HttpServletRequest		request,
+		List<String>			urls,
+		Writer					writer,
+		Locale					locale
+	) throws Exception {
+		TripleSink writerSink = pipeline(babelWriter.createSink(writer, writerProperties, locale), RequestParameters.get(request));
+		TripleSink sink = project(limit(writerSink, RequestParameters.get(request)), readerProperties);
+		Model model = ModelFactory.createModelForGraph(new SinkGraph(sink));
+		try {
+			sink.start();
+			readUpToLimit(babelReader, model, readerProperties, request, urls, locale);
+			sink.finish();
+		} finally {
+			cancel(writerSink);
+			model.close();
+		}
+	}
+	
+	/**
+	 * Streams a conversion into the response as it goes. A failure before
+	 * the response is committed still gets an error page; after that, the
+	 * response can only be cut short.
+	 */
+	protected void sendStreamedResult(
+		BabelReader 			babelReader,
+		StreamingBabelWriter 	babelWriter, 
+		Properties				readerProperties,
+		Properties 				writerProperties,
+		HttpServletRequest		request,
+		HttpServletResponse		response,
+		List<String>			urls,
+		ResponseInfo			responseInfo,
+		Locale					locale
+	) throws IOException {
+		responseInfo.m_sent = true;
+		if (babelWriter.takesWriter()) {
+			response.setCharacterEncoding(responseInfo.m_contentEncoding);
+		}
+		response.setContentType(responseInfo.m_mimeType);
+		response.setStatus(responseInfo.m_status);
+		
+		// a write that fails, as when the client has gone, cancels the reading too
+		OutputStream outputStream = response.getOutputStream();
+		OutputStream watchedStream = Cancellation.get(writerProperties).watch(outputStream);
+		try {
+			if (babelWriter.takesWriter()) {
+				Writer writer = new BufferedWriter(
+					new OutputStreamWriter(watchedStream, responseInfo.m_contentEncoding));
+				
+				streamResult(babelReader, babelWriter, 
+					readerProperties, writerProperties, request, urls, writer, locale);
+				writer.flush();
+			} else {
+				OutputStream bufferedStream = new BufferedOutputStream(watchedStream, 8192);
+				
+				writeBinaryResult(babelReader, babelWriter, Babel.Plan.STREAM, null, 
+					readerProperties, writerProperties, request, urls, bufferedStream, locale);
+				bufferedStream.flush();
+			}
+		} catch (Throwable e) {
+			if (response.isCommitted()) {
+				s_logger.warn("Conversion failed after part of it was sent", e);
+			} else {
+				// drop the partial output, which never left the buffers
+				response.resetBuffer();
+				setErrorStatus(responseInfo, e);
+				response.setCharacterEncoding("UTF-8");
+				response.setStatus(responseInfo.m_status);
+				
+				Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
+				writeError(writer, e.getLocalizedMessage(), e);
+				writer.flush();
+			}
+		} finally {
+			outputStream.close();
+		}
+	}
+	
+	/**
+	 * Puts the writer's sink on a thread of its own if the request asks for
+	 * it with <code>pipeline=true</code>, so that reading and writing
+	 * overlap.
+	 */
+	protected TripleSink pipeline(TripleSink sink, RequestParameters params) {
+		if (params.getBoolean("pipeline", false)) {
+			return new PipelinedSink(sink);
+		}
+		return sink;
+	}
+	
+	/**
+	 * Applies the request's <code>offset</code> and <code>limit</code> to
+	 * the sink, counting items, or triples if <code>limit-by=triples</code>.
+	 * Returns the sink itself if the request sets neither.
+	 */
+	protected TripleSink limit(TripleSink sink, RequestParameters params) {
+		int limit = getLimit(params);
+		int offset = params.getInt("offset", 0);
+		if (limit < 0 && offset <= 0) {
+			return sink;
+		}
+		return new LimitSink(sink, offset, limit, !"triples".equals(params.get("limit-by")));
+	}
+	
+	/**
+	 * Returns how many items or triples the request wants, or -1 for all.
+	 */
+	protected int getLimit(RequestParameters params) {
+		return params.getInt("limit", -1);
+	}
+	
+	/**
+	 * Returns the triples and types a request keeps, from its
+	 * <code>include-predicates</code>, <code>exclude-predicates</code>,
+	 * <code>include-types</code> and <code>exclude-types</code>
+	 * parameters, or null if it keeps everything.
+	 */
+	protected Projection getProjection(RequestParameters params) {
+		return Projection.create(
+			params.get("include-predicates"), 
+			params.get("exclude-predicates"), 
+			params.get("include-types"), 
+			params.get("exclude-types"));
+	}
+	
+	/**
+	 * Puts the projection handed to the readers in front of the sink.
+	 */
+	static protected TripleSink project(TripleSink sink, Properties readerProperties) {
+		Projection projection = Projection.get(readerProperties);
+		return projection == null ? sink : new ProjectionSink(projection, sink);
+	}
+	
+	/**
+	 * Returns the cancellation for a conversion, with a deadline if it has
+	 * a timeout.
+	 */
+	protected Cancellation createCancellation(RequestParameters params) {
+		Cancellation cancellation = new Cancellation();
+		int timeout = getTimeout(params);
+		if (timeout > 0) {
+			cancellation.setDeadline(System.currentTimeMillis() + timeout * 1000L);
+		}
+		return cancellation;
+	}
+	
+	/**
+	 * Returns how many seconds a conversion may run, or 0 for no limit: the
+	 * request's <code>timeout</code> or the servlet's
+	 * <code>max-timeout</code>, whichever is shorter, so that a conversion
+	 * nobody waits for any more ends too.
+	 */
+	protected int getTimeout(RequestParameters params) {
+		int timeout = params.getInt("timeout", 0);
+		if (m_maxTimeout > 0 && (timeout <= 0 || timeout > m_maxTimeout)) {
+			timeout = m_maxTimeout;
+		}
+		return timeout;
+	}
+	
+	/**
+	 * A conversion that was cancelled, or ran out of time, is reported as
+	 * unavailable rather than as having succeeded.
+	 */
+	static protected void setErrorStatus(ResponseInfo responseInfo, Throwable e) {
+		if (CancelledException.isCause(e)) {
+			responseInfo.m_status = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+		}
+	}
+	
+	static protected void cancel(TripleSink sink) {
+		if (sink instanceof PipelinedSink) {
+			((PipelinedSink) sink).cancel();
+		}
+	}
     
     protected void writeError(Writer writer, String message, Throwable e) {
         try {
@@ -402,7 +903,7 @@ public class TranslatorServlet extends HttpServlet {
 	                vcContext.put("stackTrace", stringWriter.toString());
 	            }
             }
-            m_ve.mergeTemplate("error.vt", vcContext, writer);
+            TemplateService.getInstance().render("error.vt", vcContext, writer);
         } catch (Throwable e1) {
         	s_logger.error("Failed to write error into response", e1);
         }
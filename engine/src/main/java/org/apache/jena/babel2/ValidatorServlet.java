@@ -1,6 +1,5 @@
 package org.apache.jena.babel2;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -11,19 +10,14 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Properties;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.lang.StringUtils;
-import org.apache.jena.babel2.util.Util;
 import org.apache.log4j.Logger;
 import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
-import org.apache.velocity.runtime.RuntimeConstants;
 import org.mozilla.javascript.CompilerEnvirons;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ErrorReporter;
@@ -44,27 +38,6 @@ public class ValidatorServlet extends HttpServlet {
 	private static final long serialVersionUID = -5216314675436973678L;
 	final static private Logger s_logger = Logger.getLogger(ValidatorServlet.class);
 
-	private VelocityEngine m_ve;
-	
-	@Override
-	public void init() throws ServletException {
-		super.init();
-		
-        try {
-    		File webapp = new File(getServletContext().getRealPath("/"));
-    		
-            Properties velocityProperties = new Properties();
-            velocityProperties.setProperty(
-                    RuntimeConstants.FILE_RESOURCE_LOADER_PATH, 
-                    new File(new File(webapp, "WEB-INF"), "templates").getAbsolutePath());
-    		
-            m_ve = new VelocityEngine();
-			m_ve.init(velocityProperties);
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-	}
-	
 	@Override
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) 
 			throws ServletException, IOException {
@@ -92,35 +65,9 @@ public class ValidatorServlet extends HttpServlet {
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         response.setContentType("text/html");
            
-		String url = null;
-		String expression = null;
-		
-		/*
-		 * Parse parameters
-		 */
-        String[] params = StringUtils.splitPreserveAllTokens(request.getQueryString(), '&');
-        if (params != null) {
-	        for (int i = 0; i < params.length; i++) {
-	            String param = params[i];
-	            int equalIndex = param.indexOf('=');
-	
-	            if (equalIndex >= 0) {
-	                String rawName = param.substring(0, equalIndex);
-	                String rawValue = param.substring(equalIndex + 1);
-	
-	                String name = Util.decode(rawName);
-	                String value = Util.decode(rawValue);
-	
-					if (name.equals("url")) {
-						url = value;
-						break;
-					} else if (name.equals("expression")) {
-						expression = value;
-						break;
-					}
-	            }
-			}
-        }
+		RequestParameters params = RequestParameters.get(request);
+		String url = params.get("url");
+		String expression = params.get("expression");
         
 		/*
 		 * Load source from URL if any
@@ -153,7 +100,7 @@ public class ValidatorServlet extends HttpServlet {
                 VelocityContext vcContext = new VelocityContext();
    	            vcContext.put("hasCode", new Boolean(false));
    	            
-	            m_ve.mergeTemplate("validator.vt", vcContext, response.getWriter());
+	            TemplateService.getInstance().render("validator.vt", vcContext, response);
 	        } catch (Throwable t) {
 	        	throw new ServletException(t);
 	        }
@@ -188,7 +135,7 @@ public class ValidatorServlet extends HttpServlet {
 	            writer.close();
             }
             
-            m_ve.mergeTemplate("validator.vt", vcContext, response.getWriter());
+            TemplateService.getInstance().render("validator.vt", vcContext, response);
         } catch (Throwable t) {
         	throw new ServletException(t);
         }
@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.format;
+
+import java.util.Locale;
+
+import org.apache.jena.babel2.SerializationFormat;
+
+public class InvertedIndexFormat implements SerializationFormat {
+	final static public InvertedIndexFormat s_singleton = new InvertedIndexFormat();
+	
+	protected InvertedIndexFormat() {
+		// nothing
+	}
+
+	public String getLabel(Locale locale) {
+		return "Inverted index";
+	}
+	
+	public String getDescription(Locale locale) {
+		return "Binary full-text index of literals, readable with org.apache.jena.babel2.index.InvertedIndex";
+	}
+	
+	public String getMimetype() {
+		return "application/octet-stream";
+	}
+}
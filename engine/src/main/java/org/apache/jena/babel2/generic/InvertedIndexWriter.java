@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.generic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.lang.NotImplementedException;
+import org.apache.jena.babel2.Capabilities;
+import org.apache.jena.babel2.GenericType;
+import org.apache.jena.babel2.SemanticType;
+import org.apache.jena.babel2.SerializationFormat;
+import org.apache.jena.babel2.StreamingBabelWriter;
+import org.apache.jena.babel2.TripleSink;
+import org.apache.jena.babel2.format.InvertedIndexFormat;
+import org.apache.jena.babel2.index.InvertedIndexBuilder;
+import org.apache.jena.babel2.sink.Sinks;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * Writes the literals of the data as an inverted index, mapping terms to
+ * the subjects, predicates and positions they occur at. The optional
+ * <code>predicates</code> property restricts the index to the literals of
+ * the given predicates, as for the {@link TextWriter}.
+ */
+public class InvertedIndexWriter implements StreamingBabelWriter {
+
+	public String getDescription(Locale locale) {
+		return "Inverted Index Writer";
+	}
+
+	public String getLabel(Locale locale) {
+		return "Inverted Index Writer";
+	}
+
+	public SemanticType getSemanticType() {
+		return GenericType.s_singleton;
+	}
+
+	public SerializationFormat getSerializationFormat() {
+		return InvertedIndexFormat.s_singleton;
+	}
+	
+	public boolean takesWriter() {
+		return false;
+	}
+	
+	public void write(Writer writer, Model model, Properties properties, Locale locale) throws Exception {
+		throw new NotImplementedException();
+	}
+
+	public void write(OutputStream outputStream, Model model, Properties properties, Locale locale) throws Exception {
+		Sinks.emit(model, createSink(outputStream, properties, locale));
+	}
+
+	/**
+	 * Postings are sorted before they are written, so any order will do.
+	 */
+	public Capabilities getWriterCapabilities(Properties properties) {
+		return new Capabilities(true, Capabilities.Ordering.ANY, true);
+	}
+
+	public TripleSink createSink(Writer writer, Properties properties, Locale locale) throws Exception {
+		throw new NotImplementedException();
+	}
+
+	public TripleSink createSink(final OutputStream outputStream, Properties properties, Locale locale) throws Exception {
+		final Set<String> predicates = TextWriter.parseSet(properties.getProperty("predicates"), false);
+		final InvertedIndexBuilder builder = new InvertedIndexBuilder();
+		
+		return new TripleSink() {
+			public void start() {
+			}
+			
+			public void prefix(String prefix, String uri) {
+			}
+			
+			public void triple(Triple triple) {
+				Node object = triple.getObject();
+				String predicate = triple.getPredicate().getURI();
+				if (object.isLiteral() && (predicates == null || predicates.contains(predicate))) {
+					Node subject = triple.getSubject();
+					builder.add(
+						subject.isBlank() ? "_:" + subject.getBlankNodeLabel() : subject.getURI(), 
+						predicate, 
+						object.getLiteralLexicalForm());
+				}
+			}
+			
+			public void finish() throws IOException {
+				builder.write(outputStream);
+				outputStream.flush();
+			}
+		};
+	}
+}
@@ -38,6 +38,7 @@ import org.apache.jena.babel2.GenericType;
 import org.apache.jena.babel2.SemanticType;
 import org.apache.jena.babel2.SerializationFormat;
 import org.apache.jena.babel2.format.RSS1p0Format;
+import org.apache.jena.babel2.util.Cancellation;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -85,6 +86,92 @@ public class RSS1p0Writer implements BabelWriter {
             url = "http://www.example.com/";
         }
         
+        Cancellation cancellation = Cancellation.get(properties);
+        writeFeed(cancellation.watch(writer), url, collectItems(model, cancellation));
+	}
+
+	/**
+	 * An entry of the feed, computed from one typed subject of a model.
+	 */
+	static public class Item {
+		final public String m_uri;
+		final public String m_title;
+		final public String m_description;
+		
+		public Item(String uri, String title, String description) {
+			m_uri = uri;
+			m_title = title;
+			m_description = description;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Item)) {
+				return false;
+			}
+			Item other = (Item) o;
+			return equal(m_uri, other.m_uri) && equal(m_title, other.m_title) && 
+				equal(m_description, other.m_description);
+		}
+		
+		@Override
+		public int hashCode() {
+			return m_uri == null ? 0 : m_uri.hashCode();
+		}
+		
+		static private boolean equal(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+	
+	/**
+	 * Computes the feed items for every typed subject in the model, so that
+	 * callers aggregating several sources can cache them per source.
+	 */
+	static public List<Item> collectItems(Model model) {
+		return collectItems(model, Cancellation.s_never);
+	}
+	
+	/**
+	 * Computes the feed items, checking the cancellation for each.
+	 */
+	static public List<Item> collectItems(Model model, Cancellation cancellation) {
+		List<Item> items = new ArrayList<Item>();
+		
+        StmtIterator iter = model.listStatements((Resource)null, RDF.type, (RDFNode)null);
+        try {
+	        while ( iter.hasNext() ) {
+	        	cancellation.check();
+	        	
+	        	Statement statement = iter.next();
+	        	Resource subject = statement.getSubject();
+	        	
+	            StringBuffer stringBuffer = new StringBuffer();
+	        	StmtIterator iter2 = model.listStatements(subject, (Property)null, (RDFNode)null);
+	        	try {
+		        	while ( iter2.hasNext() ) {
+		        		Statement statement2 = iter2.next();
+		                RDFNode object = statement2.getObject();
+		                stringBuffer.append(object.toString());
+		                stringBuffer.append('\n');
+		        	}
+	        	} finally {
+	        		iter2.close();
+	        	}
+	        	
+	        	items.add(new Item(
+	        		subject.getURI(), 
+	        		_getObjectString(subject, RDFS.label, model), 
+	        		stringBuffer.toString()));
+	        }
+        } finally {
+        	iter.close();
+        }
+        
+        return items;
+	}
+	
+	static public void writeFeed(Writer writer, String url, List<Item> items) throws Exception {
         Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
         
         Element rootElement = document.createElementNS("http://www.w3.org/1999/02/22-rdf-syntax-ns#", "rdf:RDF");
@@ -108,45 +195,24 @@ public class RSS1p0Writer implements BabelWriter {
             rootElement.appendChild(channelElement);
         }
         
-        List<String> itemURIs = new ArrayList<String>();
-		
-        
-        StmtIterator iter = model.listStatements((Resource)null, RDF.type, (RDFNode)null);
-        while ( iter.hasNext() ) {
-        	Statement statement = iter.next();
-        	Resource subject = statement.getSubject();
-        	String subjectURI = subject.getURI();
-        	
+        for (Item item : items) {
             Element itemElement = document.createElement("item");
             {
-                itemElement.setAttribute("rdf:about", subjectURI);
-                itemElement.appendChild(_createElementWithText(document, "title", _getObjectString(subject, RDFS.label, model)));
-                itemElement.appendChild(_createElementWithText(document, "link", subjectURI));
-                
-                StringBuffer stringBuffer = new StringBuffer();
-                {
-                	StmtIterator iter2 = model.listStatements(subject, (Property)null, (RDFNode)null);
-                	while ( iter2.hasNext() ) {
-                		Statement statement2 = iter2.next();
-                        RDFNode object = statement2.getObject();
-                        stringBuffer.append(object.toString());
-                        stringBuffer.append('\n');
-                	}
-                    itemElement.appendChild(_createElementWithText(document, "description", stringBuffer.toString()));
-                }
+                itemElement.setAttribute("rdf:about", item.m_uri);
+                itemElement.appendChild(_createElementWithText(document, "title", item.m_title));
+                itemElement.appendChild(_createElementWithText(document, "link", item.m_uri));
+                itemElement.appendChild(_createElementWithText(document, "description", item.m_description));
 
                 rootElement.appendChild(itemElement);
             }
-            
-            itemURIs.add(subjectURI);
         }
         
         Element seq = document.createElement("rdf:Seq");
         {
             
-            for (String itemURI : itemURIs) {
+            for (Item item : items) {
                 Element li = document.createElement("rdf:li");
-                li.setAttribute("rdf:resource", itemURI);
+                li.setAttribute("rdf:resource", item.m_uri);
                 
                 seq.appendChild(li);
             }
@@ -177,7 +243,7 @@ public class RSS1p0Writer implements BabelWriter {
     
     static protected String _getObjectString(Resource subject, Property predicate, Model model) {
         RDFNode v = _getObject(subject, predicate, model);
-        return v.isLiteral() ? v.asLiteral().getLexicalForm() : null;
+        return (v != null && v.isLiteral()) ? v.asLiteral().getLexicalForm() : null;
     }
     
     static protected RDFNode _getObject(Resource subject, Property predicate, Model model) {
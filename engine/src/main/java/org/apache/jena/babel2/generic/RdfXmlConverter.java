@@ -18,24 +18,67 @@
 
 package org.apache.jena.babel2.generic;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.commons.lang.NotImplementedException;
-import org.apache.jena.babel2.BabelReader;
-import org.apache.jena.babel2.BabelWriter;
+import org.apache.jena.babel2.Capabilities;
 import org.apache.jena.babel2.GenericType;
 import org.apache.jena.babel2.SemanticType;
 import org.apache.jena.babel2.SerializationFormat;
+import org.apache.jena.babel2.StreamingBabelReader;
+import org.apache.jena.babel2.StreamingBabelWriter;
+import org.apache.jena.babel2.TripleSink;
 import org.apache.jena.babel2.format.RdfXmlFormat;
+import org.apache.jena.babel2.sink.GraphSink;
+import org.apache.jena.babel2.sink.SamplingSink;
+import org.apache.jena.babel2.sink.Sinks;
+import org.apache.jena.babel2.util.Cancellation;
 
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.arp.ALiteral;
+import com.hp.hpl.jena.rdf.arp.ARP;
+import com.hp.hpl.jena.rdf.arp.AResource;
+import com.hp.hpl.jena.rdf.arp.NamespaceHandler;
+import com.hp.hpl.jena.rdf.arp.StatementHandler;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.RDFErrorHandler;
+import com.hp.hpl.jena.rdf.model.impl.RDFDefaultErrorHandler;
+import com.hp.hpl.jena.rdf.model.impl.Util;
+import com.hp.hpl.jena.shared.JenaException;
+import com.hp.hpl.jena.vocabulary.RDF;
 
-public class RdfXmlConverter implements BabelReader, BabelWriter {
+/**
+ * Reads and writes RDF/XML. The <code>style</code> writer property picks
+ * how it is written:
+ * <ul>
+ * <li><code>streaming</code>, the default: one <code>rdf:Description</code>
+ * per run of statements about the same subject, written as they come. The
+ * root element declares the prefixes of the input and some generated for
+ * the namespaces of the predicates among the first triples; other
+ * predicates declare their namespace on their own element.</li>
+ * <li><code>plain</code>: Jena's plain writer, on the whole graph.</li>
+ * <li><code>abbreviated</code>: Jena's abbreviating writer, which nests
+ * descriptions and is the slowest by far.</li>
+ * </ul>
+ */
+public class RdfXmlConverter implements StreamingBabelReader, StreamingBabelWriter {
 
 	public String getLabel(Locale locale) {
 		return "Serializes generic data to RDF/XML";
@@ -62,7 +105,107 @@ public class RdfXmlConverter implements BabelReader, BabelWriter {
 	}
 
 	public void read(Reader reader, Model model, Properties properties, Locale locale) throws Exception {
-		model.read(reader, properties.getProperty("namespace"), "RDF/XML");
+		model.read(Cancellation.get(properties).watch(reader), properties.getProperty("namespace"), "RDF/XML");
+	}
+	
+	/**
+	 * Statements come in document order.
+	 */
+	public Capabilities getReaderCapabilities(Properties properties) {
+		return new Capabilities(true, Capabilities.Ordering.ANY, true);
+	}
+	
+	public void read(InputStream inputStream, TripleSink sink, Properties properties, Locale locale) throws Exception {
+		throw new NotImplementedException();
+	}
+
+	/**
+	 * Parses with ARP and hands each statement to the sink as soon as ARP
+	 * reports it, so no part of the document is kept beyond what the parser
+	 * itself needs.
+	 */
+	public void read(Reader reader, final TripleSink sink, Properties properties, Locale locale) throws Exception {
+		final Cancellation cancellation = Cancellation.get(properties);
+		
+		ARP arp = new ARP();
+		arp.getHandlers().setStatementHandler(new StatementHandler() {
+			public void statement(AResource subject, AResource predicate, AResource object) {
+				cancellation.check();
+				emit(sink, Triple.create(toNode(subject), toNode(predicate), toNode(object)));
+			}
+			
+			public void statement(AResource subject, AResource predicate, ALiteral object) {
+				cancellation.check();
+				emit(sink, Triple.create(toNode(subject), toNode(predicate), toNode(object)));
+			}
+		});
+		arp.getHandlers().setNamespaceHandler(new NamespaceHandler() {
+			public void startPrefixMapping(String prefix, String uri) {
+				try {
+					sink.prefix(prefix, uri);
+				} catch (IOException e) {
+					throw new JenaException(e);
+				}
+			}
+			
+			public void endPrefixMapping(String prefix) {
+			}
+		});
+		// as model.read(): warnings and errors are logged, only fatal errors stop
+		final RDFErrorHandler errorHandler = new RDFDefaultErrorHandler();
+		arp.getHandlers().setErrorHandler(new ErrorHandler() {
+			public void warning(SAXParseException e) {
+				errorHandler.warning(e);
+			}
+			
+			public void error(SAXParseException e) {
+				errorHandler.error(e);
+			}
+			
+			public void fatalError(SAXParseException e) {
+				errorHandler.fatalError(e);
+			}
+		});
+		
+		String base = properties.getProperty("namespace");
+		arp.load(reader, base == null ? "" : base);
+	}
+	
+	static protected void emit(TripleSink sink, Triple triple) {
+		try {
+			sink.triple(triple);
+		} catch (IOException e) {
+			throw new JenaException(e);
+		}
+	}
+	
+	/**
+	 * Blank nodes get a fresh id, minted once per resource as Jena's own
+	 * reader does, so that <code>rdf:nodeID</code> labels of different
+	 * documents never meet.
+	 */
+	static protected Node toNode(AResource resource) {
+		if (!resource.isAnonymous()) {
+			return Node.createURI(resource.getURI());
+		}
+		Node node = (Node) resource.getUserData();
+		if (node == null) {
+			node = Node.createAnon();
+			resource.setUserData(node);
+		}
+		return node;
+	}
+	
+	static protected Node toNode(ALiteral literal) {
+		String lang = literal.getLang();
+		if (literal.isWellFormedXML()) {
+			return Node.createLiteral(literal.toString(), lang, true);
+		} else if (literal.getDatatypeURI() != null) {
+			return Node.createLiteral(literal.toString(), lang, 
+				TypeMapper.getInstance().getSafeTypeByName(literal.getDatatypeURI()));
+		} else {
+			return Node.createLiteral(literal.toString(), lang, false);
+		}
 	}
 
 	public boolean takesWriter() {
@@ -74,7 +217,292 @@ public class RdfXmlConverter implements BabelReader, BabelWriter {
 	}
 
 	public void write(Writer writer, Model model, Properties properties, Locale locale) throws Exception {
-		model.write(writer, "RDF/XML");
+		String language = getJenaLanguage(properties);
+		if (language != null) {
+			model.write(Cancellation.get(properties).watch(writer), language);
+		} else {
+			Sinks.emit(model, createSink(writer, properties, locale));
+		}
+	}
+
+	/**
+	 * Streamed statements can come in any order, at the cost of a
+	 * description for each run of statements about a subject.
+	 */
+	public Capabilities getWriterCapabilities(Properties properties) {
+		if (getJenaLanguage(properties) != null) {
+			return Capabilities.s_materialized;
+		}
+		return new Capabilities(true, Capabilities.Ordering.ANY, true);
+	}
+
+	public TripleSink createSink(OutputStream outputStream, Properties properties, Locale locale) throws Exception {
+		throw new NotImplementedException();
 	}
 
+	public TripleSink createSink(Writer writer, Properties properties, Locale locale) throws Exception {
+		String language = getJenaLanguage(properties);
+		Cancellation cancellation = Cancellation.get(properties);
+		if (language != null) {
+			return new JenaWriterSink(cancellation.watch(writer), language);
+		}
+		return new RdfXmlSink(writer, SamplingSink.s_defaultSampleSize, cancellation);
+	}
+	
+	/**
+	 * Returns the Jena writer to use for the style asked for, or null for
+	 * the streaming writer.
+	 */
+	static protected String getJenaLanguage(Properties properties) {
+		String style = properties.getProperty("style");
+		if ("plain".equalsIgnoreCase(style)) {
+			return "RDF/XML";
+		} else if ("abbreviated".equalsIgnoreCase(style)) {
+			return "RDF/XML-ABBREV";
+		}
+		return null;
+	}
+	
+	/**
+	 * Collects the whole graph, then writes it with one of Jena's writers.
+	 */
+	static protected class JenaWriterSink extends GraphSink {
+		final private Writer m_writer;
+		final private Model m_model;
+		final private String m_language;
+		
+		public JenaWriterSink(Writer writer, String language) {
+			this(writer, ModelFactory.createDefaultModel(), language);
+		}
+		
+		private JenaWriterSink(Writer writer, Model model, String language) {
+			super(model.getGraph());
+			m_writer = writer;
+			m_model = model;
+			m_language = language;
+		}
+		
+		@Override
+		public void finish() {
+			m_model.write(m_writer, m_language);
+			m_model.close();
+		}
+	}
+	
+	static protected class RdfXmlSink extends SamplingSink {
+		final private Writer				m_writer;
+		
+		// namespace to prefix, and prefix to namespace
+		final private Map<String, String>	m_namespaces = new HashMap<String, String>();
+		final private Map<String, String>	m_prefixToNamespace = new LinkedHashMap<String, String>();
+		
+		// for predicates whose namespace the root element does not declare
+		private String						m_localPrefix;
+		
+		private Node						m_subject;
+		
+		public RdfXmlSink(Writer writer, int sampleSize, Cancellation cancellation) {
+			super(sampleSize, cancellation);
+			m_writer = new BufferedWriter(writer, 8192);
+		}
+		
+		@Override
+		protected void writeHeader(List<Triple> sample) throws IOException {
+			addNamespace("rdf", RDF.getURI());
+			for (Map.Entry<String, String> entry : m_prefixes.entrySet()) {
+				if (isNCName(entry.getKey())) {
+					addNamespace(entry.getKey(), entry.getValue());
+				}
+			}
+			int next = 0;
+			for (Triple triple : sample) {
+				String uri = triple.getPredicate().getURI();
+				int split = Util.splitNamespace(uri);
+				if (split > 0 && split < uri.length() && !m_namespaces.containsKey(uri.substring(0, split))) {
+					String prefix;
+					do {
+						prefix = "ns" + next++;
+					} while (m_prefixToNamespace.containsKey(prefix));
+					addNamespace(prefix, uri.substring(0, split));
+				}
+			}
+			do {
+				m_localPrefix = "ns" + next++;
+			} while (m_prefixToNamespace.containsKey(m_localPrefix));
+			
+			m_writer.write("<rdf:RDF");
+			for (Map.Entry<String, String> entry : m_prefixToNamespace.entrySet()) {
+				m_writer.write("\n    xmlns:");
+				m_writer.write(entry.getKey());
+				m_writer.write("=\"");
+				writeEscaped(entry.getValue(), true);
+				m_writer.write('"');
+			}
+			m_writer.write(">\n");
+		}
+		
+		/*
+		 * The root element is already written, so later prefixes are left
+		 * out; predicates in their namespaces declare it locally instead.
+		 */
+		@Override
+		protected void writePrefix(String prefix, String uri) {
+		}
+		
+		@Override
+		protected void writeTriple(Triple triple) throws IOException {
+			Node subject = triple.getSubject();
+			if (!subject.equals(m_subject)) {
+				endSubject();
+				m_writer.write("  <rdf:Description ");
+				writeReference(subject, "about");
+				m_writer.write(">\n");
+				m_subject = subject;
+			}
+			
+			String uri = triple.getPredicate().getURI();
+			int split = Util.splitNamespace(uri);
+			if (split <= 0 || split >= uri.length()) {
+				throw new JenaException("Predicate " + uri + " cannot be written in RDF/XML");
+			}
+			String namespace = uri.substring(0, split);
+			String prefix = m_namespaces.get(namespace);
+			
+			m_writer.write("    <");
+			if (prefix != null) {
+				m_writer.write(prefix);
+			} else {
+				m_writer.write(m_localPrefix);
+			}
+			m_writer.write(':');
+			m_writer.write(uri, split, uri.length() - split);
+			if (prefix == null) {
+				m_writer.write(" xmlns:");
+				m_writer.write(m_localPrefix);
+				m_writer.write("=\"");
+				writeEscaped(namespace, true);
+				m_writer.write('"');
+				prefix = m_localPrefix;
+			}
+			
+			Node object = triple.getObject();
+			if (object.isLiteral()) {
+				String language = object.getLiteralLanguage();
+				if (language != null && language.length() > 0) {
+					m_writer.write(" xml:lang=\"");
+					writeEscaped(language, true);
+					m_writer.write('"');
+				}
+				if (object.getLiteralIsXML()) {
+					m_writer.write(" rdf:parseType=\"Literal\">");
+					m_writer.write(object.getLiteralLexicalForm());
+				} else {
+					String datatype = object.getLiteralDatatypeURI();
+					if (datatype != null) {
+						m_writer.write(" rdf:datatype=\"");
+						writeEscaped(datatype, true);
+						m_writer.write('"');
+					}
+					m_writer.write('>');
+					writeEscaped(object.getLiteralLexicalForm(), false);
+				}
+				m_writer.write("</");
+				m_writer.write(prefix);
+				m_writer.write(':');
+				m_writer.write(uri, split, uri.length() - split);
+				m_writer.write(">\n");
+			} else {
+				m_writer.write(' ');
+				writeReference(object, "resource");
+				m_writer.write("/>\n");
+			}
+		}
+		
+		@Override
+		protected void writeFooter() throws IOException {
+			endSubject();
+			m_writer.write("</rdf:RDF>\n");
+			m_writer.flush();
+		}
+		
+		private void endSubject() throws IOException {
+			if (m_subject != null) {
+				m_writer.write("  </rdf:Description>\n");
+				m_subject = null;
+			}
+		}
+		
+		private void addNamespace(String prefix, String uri) {
+			if (!m_prefixToNamespace.containsKey(prefix)) {
+				m_prefixToNamespace.put(prefix, uri);
+				if (!m_namespaces.containsKey(uri)) {
+					m_namespaces.put(uri, prefix);
+				}
+			}
+		}
+		
+		/*
+		 * Jena's blank node labels are not XML names, so anything but letters
+		 * and digits is escaped, underscores included, which keeps distinct
+		 * labels distinct.
+		 */
+		private void writeReference(Node node, String attribute) throws IOException {
+			if (node.isBlank()) {
+				String label = node.getBlankNodeLabel();
+				m_writer.write("rdf:nodeID=\"b");
+				for (int i = 0; i < label.length(); i++) {
+					char c = label.charAt(i);
+					if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+						m_writer.write(c);
+					} else {
+						m_writer.write('_');
+						m_writer.write(Integer.toHexString(c));
+						m_writer.write('_');
+					}
+				}
+			} else if (node.isURI()) {
+				m_writer.write("rdf:");
+				m_writer.write(attribute);
+				m_writer.write("=\"");
+				writeEscaped(node.getURI(), true);
+			} else {
+				throw new JenaException("Cannot write " + node + " in RDF/XML");
+			}
+			m_writer.write('"');
+		}
+		
+		private void writeEscaped(String s, boolean attribute) throws IOException {
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				switch (c) {
+				case '&':	m_writer.write("&amp;"); break;
+				case '<':	m_writer.write("&lt;"); break;
+				case '>':	m_writer.write("&gt;"); break;
+				case '\r':	m_writer.write("&#xD;"); break;
+				case '"':	m_writer.write(attribute ? "&quot;" : "\""); break;
+				case '\n':	m_writer.write(attribute ? "&#xA;" : "\n"); break;
+				case '\t':	m_writer.write(attribute ? "&#x9;" : "\t"); break;
+				default:
+					if (c < ' ') {
+						throw new JenaException("Character " + (int) c + " cannot be written in XML");
+					}
+					m_writer.write(c);
+				}
+			}
+		}
+		
+		static private boolean isNCName(String s) {
+			if (s == null || s.length() == 0 || s.toLowerCase().startsWith("xml")) {
+				return false;
+			}
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+				if (!letter && (i == 0 || !((c >= '0' && c <= '9') || c == '-' || c == '.'))) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
 }
@@ -18,25 +18,47 @@
 
 package org.apache.jena.babel2.generic;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.util.HashSet;
 import java.util.Locale;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.commons.lang.NotImplementedException;
-import org.apache.jena.babel2.BabelWriter;
+import org.apache.commons.lang.StringUtils;
+import org.apache.jena.babel2.Capabilities;
 import org.apache.jena.babel2.GenericType;
 import org.apache.jena.babel2.SemanticType;
 import org.apache.jena.babel2.SerializationFormat;
+import org.apache.jena.babel2.StreamingBabelWriter;
+import org.apache.jena.babel2.TripleSink;
 import org.apache.jena.babel2.format.TextFormat;
+import org.apache.jena.babel2.sink.Sinks;
 
-import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Statement;
-import com.hp.hpl.jena.rdf.model.StmtIterator;
 
-public class TextWriter implements BabelWriter {
+/**
+ * Writes out the text of literals, for feeding search engines. By default
+ * the lexical forms of all literals are written separated by spaces. These
+ * properties change that:
+ * <ul>
+ * <li><code>predicates</code>: only literals of these predicates (URIs
+ * separated by spaces or commas) are written;</li>
+ * <li><code>languages</code>: literals tagged with other languages are
+ * skipped, untagged ones are always written;</li>
+ * <li><code>dedupe</code>: if "true", a text is written once per subject;</li>
+ * <li><code>mode</code>: if "record", one line is written per subject, with
+ * the subject, a tab and the subject's text.</li>
+ * </ul>
+ * Subjects are recognized as runs of consecutive triples, so deduping and
+ * records are exact when the triples come grouped by subject, as they do
+ * from a model.
+ */
+public class TextWriter implements StreamingBabelWriter {
 	
 	public String getDescription(Locale locale) {
 		return "Text Writer";
@@ -63,14 +85,150 @@ public class TextWriter implements BabelWriter {
 	}
 
 	public void write(Writer writer, Model model, Properties properties, Locale locale) throws Exception {
-		StmtIterator iter = model.listStatements();
-        while (iter.hasNext()) {
-            Statement s = iter.next();
-            RDFNode object = s.getObject();
-            if (object instanceof Literal) {
-                writer.write(object.asLiteral().getLexicalForm());
-                writer.write(' ');
-            }
-        }
+		Sinks.emit(model, createSink(writer, properties, locale));
+	}
+
+	/**
+	 * Deduping and records need the triples grouped by subject.
+	 */
+	public Capabilities getWriterCapabilities(Properties properties) {
+		boolean grouped = "true".equalsIgnoreCase(properties.getProperty("dedupe")) ||
+			"record".equalsIgnoreCase(properties.getProperty("mode"));
+		return new Capabilities(true, 
+			grouped ? Capabilities.Ordering.SUBJECT_GROUPED : Capabilities.Ordering.ANY, true);
+	}
+
+	public TripleSink createSink(OutputStream outputStream, Properties properties, Locale locale) throws Exception {
+		throw new NotImplementedException();
+	}
+
+	public TripleSink createSink(Writer writer, Properties properties, Locale locale) throws Exception {
+		return new TextSink(writer, properties);
+	}
+	
+	static protected Set<String> parseSet(String value, boolean lowerCase) {
+		if (value == null || value.trim().length() == 0) {
+			return null;
+		}
+		Set<String> set = new HashSet<String>();
+		for (String s : StringUtils.split(value, " ,")) {
+			set.add(lowerCase ? s.toLowerCase() : s);
+		}
+		return set;
+	}
+	
+	static protected class TextSink implements TripleSink {
+		final private Writer		m_writer;
+		final private char[]		m_buffer = new char[8192];
+		private int					m_length = 0;
+		
+		final private Set<String>	m_predicates;
+		final private Set<String>	m_languages;
+		final private boolean		m_dedupe;
+		final private boolean		m_records;
+		
+		private Node				m_subject;
+		private boolean				m_recordEmpty;
+		final private Set<String>	m_seen = new HashSet<String>();
+		
+		public TextSink(Writer writer, Properties properties) {
+			m_writer = writer;
+			m_predicates = parseSet(properties.getProperty("predicates"), false);
+			m_languages = parseSet(properties.getProperty("languages"), true);
+			m_dedupe = "true".equalsIgnoreCase(properties.getProperty("dedupe"));
+			m_records = "record".equalsIgnoreCase(properties.getProperty("mode"));
+		}
+		
+		public void start() {
+		}
+		
+		public void prefix(String prefix, String uri) {
+		}
+		
+		public void triple(Triple triple) throws IOException {
+			Node object = triple.getObject();
+			if (!object.isLiteral()) {
+				return;
+			}
+			if (m_predicates != null && !m_predicates.contains(triple.getPredicate().getURI())) {
+				return;
+			}
+			if (m_languages != null) {
+				String language = object.getLiteralLanguage();
+				if (language != null && language.length() > 0 && !m_languages.contains(language.toLowerCase())) {
+					return;
+				}
+			}
+			
+			Node subject = triple.getSubject();
+			if (!subject.equals(m_subject)) {
+				if (m_records && m_subject != null) {
+					append('\n');
+				}
+				m_subject = subject;
+				m_seen.clear();
+				if (m_records) {
+					append(subject.isBlank() ? "_:" + subject.getBlankNodeLabel() : subject.getURI());
+					append('\t');
+					m_recordEmpty = true;
+				}
+			}
+			
+			String text = object.getLiteralLexicalForm();
+			if (m_dedupe && !m_seen.add(text)) {
+				return;
+			}
+			
+			if (m_records) {
+				if (!m_recordEmpty) {
+					append(' ');
+				}
+				m_recordEmpty = false;
+				
+				// keep each record on one line
+				for (int i = 0; i < text.length(); i++) {
+					char c = text.charAt(i);
+					append(c == '\n' || c == '\r' || c == '\t' ? ' ' : c);
+				}
+			} else {
+				append(text);
+				append(' ');
+			}
+		}
+		
+		public void finish() throws IOException {
+			if (m_records && m_subject != null) {
+				append('\n');
+			}
+			flushBuffer();
+			m_writer.flush();
+		}
+		
+		private void append(char c) throws IOException {
+			if (m_length == m_buffer.length) {
+				flushBuffer();
+			}
+			m_buffer[m_length++] = c;
+		}
+		
+		private void append(String s) throws IOException {
+			int length = s.length();
+			if (length > m_buffer.length - m_length) {
+				flushBuffer();
+				if (length > m_buffer.length) {
+					m_writer.write(s);
+					return;
+				}
+			}
+			s.getChars(0, length, m_buffer, m_length);
+			m_length += length;
+		}
+		
+		private void flushBuffer() throws IOException {
+			if (m_length > 0) {
+				m_writer.write(m_buffer, 0, m_length);
+				m_length = 0;
+			}
+		}
 	}
 }
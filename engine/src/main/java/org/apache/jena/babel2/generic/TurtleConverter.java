@@ -18,24 +18,52 @@
 
 package org.apache.jena.babel2.generic;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.commons.lang.NotImplementedException;
 import org.apache.jena.babel2.BabelReader;
-import org.apache.jena.babel2.BabelWriter;
+import org.apache.jena.babel2.Capabilities;
 import org.apache.jena.babel2.GenericType;
 import org.apache.jena.babel2.SemanticType;
 import org.apache.jena.babel2.SerializationFormat;
+import org.apache.jena.babel2.StreamingBabelWriter;
+import org.apache.jena.babel2.TripleSink;
 import org.apache.jena.babel2.format.TurtleFormat;
+import org.apache.jena.babel2.sink.GraphSink;
+import org.apache.jena.babel2.sink.SamplingSink;
+import org.apache.jena.babel2.sink.Sinks;
+import org.apache.jena.babel2.util.Cancellation;
 
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.vocabulary.RDF;
 
-public class TurtleConverter implements BabelReader, BabelWriter {
+/**
+ * Reads and writes Turtle. The <code>style</code> writer property picks
+ * how it is written:
+ * <ul>
+ * <li><code>streaming</code>, the default: statements are written as they
+ * come, consecutive ones about the same subject grouped together. The
+ * prefixes are those declared by the input, plus some generated for the
+ * namespaces of the predicates and types among the first triples. Output
+ * starts at once and memory use stays bounded.</li>
+ * <li><code>pretty</code>: the whole graph is collected, then written by
+ * Jena's pretty printer, which nests blank nodes and lists.</li>
+ * </ul>
+ */
+public class TurtleConverter implements BabelReader, StreamingBabelWriter {
 
 	public String getLabel(Locale locale) {
 		return "Serializes generic data to Turtle";
@@ -62,7 +90,7 @@ public class TurtleConverter implements BabelReader, BabelWriter {
 	}
 
 	public void read(Reader reader, Model model, Properties properties, Locale locale) throws Exception {
-		model.read(reader, properties.getProperty("namespace"), "TURTLE");
+		model.read(Cancellation.get(properties).watch(reader), properties.getProperty("namespace"), "TURTLE");
 	}
 
 	public boolean takesWriter() {
@@ -74,7 +102,303 @@ public class TurtleConverter implements BabelReader, BabelWriter {
 	}
 
 	public void write(Writer writer, Model model, Properties properties, Locale locale) throws Exception {
-		model.write(writer, "TURTLE");
+		if (isPretty(properties)) {
+			model.write(Cancellation.get(properties).watch(writer), "TURTLE");
+		} else {
+			Sinks.emit(model, createSink(writer, properties, locale));
+		}
+	}
+
+	/**
+	 * Streamed statements can come in any order; grouped by subject, they
+	 * are just written more compactly.
+	 */
+	public Capabilities getWriterCapabilities(Properties properties) {
+		if (isPretty(properties)) {
+			return Capabilities.s_materialized;
+		}
+		return new Capabilities(true, Capabilities.Ordering.ANY, true);
 	}
 
+	public TripleSink createSink(OutputStream outputStream, Properties properties, Locale locale) throws Exception {
+		throw new NotImplementedException();
+	}
+
+	public TripleSink createSink(Writer writer, Properties properties, Locale locale) throws Exception {
+		Cancellation cancellation = Cancellation.get(properties);
+		if (isPretty(properties)) {
+			return new PrettySink(cancellation.watch(writer));
+		}
+		return new TurtleSink(writer, SamplingSink.s_defaultSampleSize, cancellation);
+	}
+	
+	static protected boolean isPretty(Properties properties) {
+		return "pretty".equalsIgnoreCase(properties.getProperty("style"));
+	}
+	
+	/**
+	 * Returns where the local name of a URI starts, if it is one that can
+	 * be written as a prefixed name, or -1.
+	 */
+	static protected int splitLocalName(String uri) {
+		int i = uri.length();
+		while (i > 0) {
+			char c = uri.charAt(i - 1);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-') {
+				i--;
+			} else {
+				break;
+			}
+		}
+		// the local name must start with a letter or underscore
+		while (i < uri.length()) {
+			char c = uri.charAt(i);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_') {
+				break;
+			}
+			i++;
+		}
+		return i > 0 && i < uri.length() ? i : -1;
+	}
+	
+	/**
+	 * Collects the whole graph, then pretty prints it.
+	 */
+	static protected class PrettySink extends GraphSink {
+		final private Writer m_writer;
+		final private Model m_model;
+		
+		public PrettySink(Writer writer) {
+			this(writer, ModelFactory.createDefaultModel());
+		}
+		
+		private PrettySink(Writer writer, Model model) {
+			super(model.getGraph());
+			m_writer = writer;
+			m_model = model;
+		}
+		
+		@Override
+		public void finish() {
+			m_model.write(m_writer, "TURTLE");
+			m_model.close();
+		}
+	}
+	
+	static protected class TurtleSink extends SamplingSink {
+		final static private Node			s_type = RDF.type.asNode();
+		
+		final private Writer				m_writer;
+		
+		// namespace to prefix, and prefix to namespace
+		final private Map<String, String>	m_namespaces = new HashMap<String, String>();
+		final private Map<String, String>	m_prefixToNamespace = new HashMap<String, String>();
+		private int							m_nextPrefix = 1;
+		
+		private Node						m_subject;
+		private Node						m_predicate;
+		
+		public TurtleSink(Writer writer, int sampleSize, Cancellation cancellation) {
+			super(sampleSize, cancellation);
+			m_writer = new BufferedWriter(writer, 8192);
+		}
+		
+		@Override
+		protected void writeHeader(List<Triple> sample) throws IOException {
+			for (Map.Entry<String, String> entry : m_prefixes.entrySet()) {
+				declare(entry.getKey(), entry.getValue());
+			}
+			for (Triple triple : sample) {
+				generatePrefix(triple.getPredicate());
+				if (s_type.equals(triple.getPredicate())) {
+					generatePrefix(triple.getObject());
+				}
+			}
+			if (!m_namespaces.isEmpty()) {
+				m_writer.write('\n');
+			}
+		}
+		
+		@Override
+		protected void writePrefix(String prefix, String uri) throws IOException {
+			// a prefix cannot be redefined, or names already written would change
+			if (!m_prefixToNamespace.containsKey(prefix)) {
+				endSubject();
+				declare(prefix, uri);
+			}
+		}
+		
+		@Override
+		protected void writeTriple(Triple triple) throws IOException {
+			Node subject = triple.getSubject();
+			Node predicate = triple.getPredicate();
+			if (subject.equals(m_subject)) {
+				if (predicate.equals(m_predicate)) {
+					m_writer.write(" ,\n\t\t");
+				} else {
+					m_writer.write(" ;\n\t");
+					writePredicate(predicate);
+					m_writer.write(' ');
+				}
+			} else {
+				endSubject();
+				writeNode(subject);
+				m_writer.write(' ');
+				writePredicate(predicate);
+				m_writer.write(' ');
+			}
+			writeNode(triple.getObject());
+			
+			m_subject = subject;
+			m_predicate = predicate;
+		}
+		
+		@Override
+		protected void writeFooter() throws IOException {
+			endSubject();
+			m_writer.flush();
+		}
+		
+		private void endSubject() throws IOException {
+			if (m_subject != null) {
+				m_writer.write(" .\n");
+				m_subject = null;
+				m_predicate = null;
+			}
+		}
+		
+		private void declare(String prefix, String uri) throws IOException {
+			m_prefixToNamespace.put(prefix, uri);
+			if (!m_namespaces.containsKey(uri)) {
+				m_namespaces.put(uri, prefix);
+			}
+			m_writer.write("@prefix ");
+			m_writer.write(prefix);
+			m_writer.write(": ");
+			writeURI(uri);
+			m_writer.write(" .\n");
+		}
+		
+		private void generatePrefix(Node node) throws IOException {
+			if (!node.isURI()) {
+				return;
+			}
+			String uri = node.getURI();
+			int split = splitLocalName(uri);
+			if (split < 0) {
+				return;
+			}
+			String namespace = uri.substring(0, split);
+			if (!m_namespaces.containsKey(namespace)) {
+				String prefix;
+				do {
+					prefix = "ns" + m_nextPrefix++;
+				} while (m_prefixToNamespace.containsKey(prefix));
+				declare(prefix, namespace);
+			}
+		}
+		
+		private void writePredicate(Node predicate) throws IOException {
+			if (s_type.equals(predicate)) {
+				m_writer.write('a');
+			} else {
+				writeNode(predicate);
+			}
+		}
+		
+		private void writeNode(Node node) throws IOException {
+			if (node.isURI()) {
+				String uri = node.getURI();
+				int split = splitLocalName(uri);
+				String prefix = split < 0 ? null : m_namespaces.get(uri.substring(0, split));
+				if (prefix != null) {
+					m_writer.write(prefix);
+					m_writer.write(':');
+					m_writer.write(uri, split, uri.length() - split);
+				} else {
+					writeURI(uri);
+				}
+			} else if (node.isBlank()) {
+				writeBlankNode(node.getBlankNodeLabel());
+			} else if (node.isLiteral()) {
+				writeLiteral(node);
+			} else {
+				throw new IllegalArgumentException("Cannot write " + node + " in Turtle");
+			}
+		}
+		
+		private void writeURI(String uri) throws IOException {
+			m_writer.write('<');
+			for (int i = 0; i < uri.length(); i++) {
+				char c = uri.charAt(i);
+				if (c <= ' ' || c == '<' || c == '>' || c == '"' || c == '{' || c == '}' ||
+						c == '|' || c == '^' || c == '`' || c == '\\') {
+					writeUnicodeEscape(c);
+				} else {
+					m_writer.write(c);
+				}
+			}
+			m_writer.write('>');
+		}
+		
+		/*
+		 * Jena's labels contain characters Turtle does not allow, so anything
+		 * but letters and digits is escaped, underscores included, which
+		 * keeps distinct labels distinct.
+		 */
+		private void writeBlankNode(String label) throws IOException {
+			m_writer.write("_:b");
+			for (int i = 0; i < label.length(); i++) {
+				char c = label.charAt(i);
+				if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+					m_writer.write(c);
+				} else {
+					m_writer.write('_');
+					m_writer.write(Integer.toHexString(c));
+					m_writer.write('_');
+				}
+			}
+		}
+		
+		private void writeLiteral(Node node) throws IOException {
+			String lexicalForm = node.getLiteralLexicalForm();
+			m_writer.write('"');
+			for (int i = 0; i < lexicalForm.length(); i++) {
+				char c = lexicalForm.charAt(i);
+				switch (c) {
+				case '"':	m_writer.write("\\\""); break;
+				case '\\':	m_writer.write("\\\\"); break;
+				case '\n':	m_writer.write("\\n"); break;
+				case '\r':	m_writer.write("\\r"); break;
+				case '\t':	m_writer.write("\\t"); break;
+				default:
+					if (c < ' ') {
+						writeUnicodeEscape(c);
+					} else {
+						m_writer.write(c);
+					}
+				}
+			}
+			m_writer.write('"');
+			
+			String language = node.getLiteralLanguage();
+			String datatype = node.getLiteralDatatypeURI();
+			if (language != null && language.length() > 0) {
+				m_writer.write('@');
+				m_writer.write(language);
+			} else if (datatype != null) {
+				m_writer.write("^^");
+				writeNode(Node.createURI(datatype));
+			}
+		}
+		
+		private void writeUnicodeEscape(char c) throws IOException {
+			String hex = Integer.toHexString(c).toUpperCase();
+			m_writer.write("\\u");
+			for (int i = hex.length(); i < 4; i++) {
+				m_writer.write('0');
+			}
+			m_writer.write(hex);
+		}
+	}
 }
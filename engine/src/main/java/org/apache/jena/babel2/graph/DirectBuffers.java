@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.graph;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Allocates direct buffers and frees them as soon as they are released,
+ * rather than when the garbage collector gets round to their owners. The
+ * JVM caps direct memory (<code>-XX:MaxDirectMemorySize</code>, by default
+ * the maximum heap size), and waiting for collections to give it back is
+ * how concurrent conversions run out of it.
+ * <p>
+ * Freeing relies on JDK internals. Where they are not accessible, buffers
+ * are left to the garbage collector as usual.
+ */
+final class DirectBuffers {
+    // JDK 9 and later: Unsafe.invokeCleaner(ByteBuffer)
+    final static private Object s_unsafe;
+    final static private Method s_invokeCleaner;
+
+    // JDK 6 to 8: ((DirectBuffer) buffer).cleaner().clean()
+    final static private Method s_cleaner;
+    final static private Method s_clean;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        Method cleaner = null;
+        Method clean = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (Throwable e) {
+            unsafe = null;
+            invokeCleaner = null;
+            try {
+                cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            } catch (Throwable e2) {
+                cleaner = null;
+                clean = null;
+            }
+        }
+        s_unsafe = unsafe;
+        s_invokeCleaner = invokeCleaner;
+        s_cleaner = cleaner;
+        s_clean = clean;
+    }
+
+    private DirectBuffers() {
+    }
+
+    static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Frees the memory of a buffer returned by {@link #allocate(int)}. The
+     * buffer, and any view of it, must not be used afterwards.
+     */
+    static void free(ByteBuffer buffer) {
+        try {
+            if (s_invokeCleaner != null) {
+                s_invokeCleaner.invoke(s_unsafe, buffer);
+            } else if (s_cleaner != null) {
+                Object cleaner = s_cleaner.invoke(buffer);
+                if (cleaner != null) {
+                    s_clean.invoke(cleaner);
+                }
+            }
+        } catch (Throwable e) {
+            // left to the garbage collector
+        }
+    }
+}
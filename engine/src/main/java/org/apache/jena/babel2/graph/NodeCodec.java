@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.graph;
+
+import java.nio.charset.Charset;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.rdf.model.AnonId;
+
+/**
+ * Encodes concrete RDF terms into byte strings and back. The encoding is a
+ * one byte kind tag followed by the UTF-8 text of the term; language tags
+ * and datatype URIs are separated from the lexical form by a zero byte.
+ * Comparing encodings byte by byte gives a total order over terms.
+ */
+public final class NodeCodec {
+    final static private Charset s_utf8 = Charset.forName("UTF-8");
+
+    final static private byte URI = 'U';
+    final static private byte BLANK = 'B';
+    final static private byte PLAIN = 'L';
+    final static private byte LANG = 'G';
+    final static private byte TYPED = 'T';
+
+    private NodeCodec() {
+    }
+
+    static public byte[] encode(Node node) {
+        if (node.isURI()) {
+            return encode(URI, null, node.getURI());
+        } else if (node.isBlank()) {
+            return encode(BLANK, null, node.getBlankNodeLabel());
+        } else if (node.isLiteral()) {
+            String datatype = node.getLiteralDatatypeURI();
+            String lang = node.getLiteralLanguage();
+            if (datatype != null) {
+                return encode(TYPED, datatype, node.getLiteralLexicalForm());
+            } else if (lang != null && lang.length() > 0) {
+                return encode(LANG, lang, node.getLiteralLexicalForm());
+            } else {
+                return encode(PLAIN, null, node.getLiteralLexicalForm());
+            }
+        }
+        throw new IllegalArgumentException("Cannot encode non-concrete node " + node);
+    }
+
+    static public Node decode(byte[] bytes) {
+        switch (bytes[0]) {
+        case URI:
+            return Node.createURI(new String(bytes, 1, bytes.length - 1, s_utf8));
+        case BLANK:
+            return Node.createAnon(new AnonId(new String(bytes, 1, bytes.length - 1, s_utf8)));
+        case PLAIN:
+            return Node.createLiteral(new String(bytes, 1, bytes.length - 1, s_utf8), null, null);
+        case LANG:
+        case TYPED:
+            int separator = 1;
+            while (bytes[separator] != 0) {
+                separator++;
+            }
+            String qualifier = new String(bytes, 1, separator - 1, s_utf8);
+            String lexical = new String(bytes, separator + 1, bytes.length - separator - 1, s_utf8);
+            return bytes[0] == LANG ?
+                Node.createLiteral(lexical, qualifier, null) :
+                Node.createLiteral(lexical, null, TypeMapper.getInstance().getSafeTypeByName(qualifier));
+        default:
+            throw new IllegalArgumentException("Unknown term kind " + (char) bytes[0]);
+        }
+    }
+
+    /**
+     * Compares two encoded terms as unsigned byte strings.
+     */
+    static public int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int c = (a[i] & 0xff) - (b[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    static private byte[] encode(byte kind, String qualifier, String text) {
+        byte[] textBytes = text.getBytes(s_utf8);
+        if (qualifier == null) {
+            byte[] bytes = new byte[textBytes.length + 1];
+            bytes[0] = kind;
+            System.arraycopy(textBytes, 0, bytes, 1, textBytes.length);
+            return bytes;
+        }
+
+        byte[] qualifierBytes = qualifier.getBytes(s_utf8);
+        byte[] bytes = new byte[qualifierBytes.length + textBytes.length + 2];
+        bytes[0] = kind;
+        System.arraycopy(qualifierBytes, 0, bytes, 1, qualifierBytes.length);
+        bytes[qualifierBytes.length + 1] = 0;
+        System.arraycopy(textBytes, 0, bytes, qualifierBytes.length + 2, textBytes.length);
+        return bytes;
+    }
+}
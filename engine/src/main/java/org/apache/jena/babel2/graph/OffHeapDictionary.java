@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.graph;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Interns byte strings (encoded terms) into dense int ids, starting at 0.
+ * The bytes, their offsets and the open-addressing hash table all live in
+ * direct buffers, so a dictionary of tens of millions of terms costs almost
+ * nothing on the Java heap.
+ * <p>
+ * Byte pages start at 64KB and double up to 16MB, and the tables grow from
+ * 1K entries, so that small dictionaries take little direct memory.
+ */
+public class OffHeapDictionary {
+    final static private int s_firstPageSize = 64 * 1024;
+    final static private int s_pageSize = 16 * 1024 * 1024;
+    final static private int s_initialTableSize = 1 << 10;
+
+    private ByteBuffer[]        m_pages = new ByteBuffer[4];
+    private int                 m_pageCount = 0;
+    private int                 m_pagePosition = 0;
+
+    private OffHeapIntArray     m_locations = new OffHeapIntArray(); // page and offset per id
+    private OffHeapIntArray     m_hashes = new OffHeapIntArray();
+    private OffHeapIntArray     m_table;
+    private int                 m_tableMask;
+    private int                 m_size = 0;
+
+    public OffHeapDictionary() {
+        m_table = new OffHeapIntArray(s_initialTableSize);
+        m_tableMask = s_initialTableSize - 1;
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    /**
+     * Returns the id of the given bytes, or -1 if they have never been interned.
+     */
+    public int lookup(byte[] bytes) {
+        int hash = hash(bytes);
+        for (int slot = hash & m_tableMask; ; slot = (slot + 1) & m_tableMask) {
+            int entry = m_table.get(slot);
+            if (entry == 0) {
+                return -1;
+            }
+            int id = entry - 1;
+            if (m_hashes.get(id) == hash && matches(id, bytes)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Returns the id of the given bytes, assigning a new one if needed.
+     */
+    public int intern(byte[] bytes) {
+        int hash = hash(bytes);
+        int slot = hash & m_tableMask;
+        for (; ; slot = (slot + 1) & m_tableMask) {
+            int entry = m_table.get(slot);
+            if (entry == 0) {
+                break;
+            }
+            int id = entry - 1;
+            if (m_hashes.get(id) == hash && matches(id, bytes)) {
+                return id;
+            }
+        }
+
+        int id = m_size++;
+        store(id, bytes);
+        m_hashes.ensureCapacity(m_size);
+        m_hashes.set(id, hash);
+        m_table.set(slot, id + 1);
+
+        if (m_size * 2L > m_tableMask) {
+            rehash();
+        }
+        return id;
+    }
+
+    public byte[] get(int id) {
+        ByteBuffer page = m_pages[m_locations.get(2L * id)];
+        int offset = m_locations.get(2L * id + 1);
+        int length = page.getInt(offset);
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = page.get(offset + 4 + i);
+        }
+        return bytes;
+    }
+
+    /**
+     * Frees the memory of the dictionary, which is empty afterwards.
+     */
+    public void release() {
+        for (int i = 0; i < m_pageCount; i++) {
+            DirectBuffers.free(m_pages[i]);
+        }
+        m_pages = new ByteBuffer[4];
+        m_pageCount = 0;
+        m_pagePosition = 0;
+        m_locations.release();
+        m_hashes.release();
+        m_table.release();
+        m_size = 0;
+    }
+
+    private void store(int id, byte[] bytes) {
+        int needed = bytes.length + 4;
+        if (m_pageCount == 0 || m_pagePosition + needed > m_pages[m_pageCount - 1].capacity()) {
+            if (m_pageCount == m_pages.length) {
+                m_pages = Arrays.copyOf(m_pages, m_pages.length * 2);
+            }
+            int size = m_pageCount == 0 ? s_firstPageSize :
+                (int) Math.min(m_pages[m_pageCount - 1].capacity() * 2L, s_pageSize);
+            // an oversized entry gets a page of its own
+            m_pages[m_pageCount++] = DirectBuffers.allocate(Math.max(size, needed));
+            m_pagePosition = 0;
+        }
+
+        ByteBuffer page = m_pages[m_pageCount - 1];
+        page.putInt(m_pagePosition, bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            page.put(m_pagePosition + 4 + i, bytes[i]);
+        }
+
+        m_locations.ensureCapacity(2L * id + 2);
+        m_locations.set(2L * id, m_pageCount - 1);
+        m_locations.set(2L * id + 1, m_pagePosition);
+
+        m_pagePosition += needed;
+    }
+
+    private boolean matches(int id, byte[] bytes) {
+        ByteBuffer page = m_pages[m_locations.get(2L * id)];
+        int offset = m_locations.get(2L * id + 1);
+        if (page.getInt(offset) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (page.get(offset + 4 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        int capacity = (m_tableMask + 1) * 2;
+        OffHeapIntArray table = new OffHeapIntArray(capacity);
+        int mask = capacity - 1;
+
+        for (int id = 0; id < m_size; id++) {
+            int slot = m_hashes.get(id) & mask;
+            while (table.get(slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table.set(slot, id + 1);
+        }
+
+        m_table.release();
+        m_table = table;
+        m_tableMask = mask;
+    }
+
+    static private int hash(byte[] bytes) {
+        int h = Arrays.hashCode(bytes);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.graph;
+
+import java.util.Arrays;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+import com.hp.hpl.jena.util.iterator.NullIterator;
+
+/**
+ * A Jena graph whose terms are interned into an {@link OffHeapDictionary}
+ * and whose triples are stored as packed ids in a {@link TripleTable}, both
+ * in direct buffers. Wrap it with <code>ModelFactory.createModelForGraph</code>
+ * to use it as a Model.
+ * <p>
+ * Unlike Jena's default graph, literals only match literals with the same
+ * lexical form, language and datatype, not all literals of the same value.
+ * Like it, the graph is not thread-safe.
+ * <p>
+ * The graph counts against the JVM's direct memory limit
+ * (<code>-XX:MaxDirectMemorySize</code>), not the heap. It starts at a few
+ * hundred KB and grows with the data. {@link #close()} frees its memory at
+ * once, so close graphs as soon as they are done with.
+ */
+public class OffHeapGraph extends GraphBase {
+    final static private int s_nodeCacheSize = 4096;
+
+    private OffHeapDictionary   m_dictionary = new OffHeapDictionary();
+    private TripleTable         m_triples = new TripleTable();
+
+    // a small direct-mapped cache of decoded nodes, since popular terms
+    // (predicates, types) come back over and over when iterating
+    final private Node[]        m_nodes = new Node[s_nodeCacheSize];
+    final private int[]         m_nodeIds = new int[s_nodeCacheSize];
+
+    public OffHeapGraph() {
+        Arrays.fill(m_nodeIds, -1);
+    }
+
+    @Override
+    public void performAdd(Triple t) {
+        m_triples.add(intern(t.getSubject()), intern(t.getPredicate()), intern(t.getObject()));
+    }
+
+    @Override
+    public void performDelete(Triple t) {
+        int s = lookup(t.getSubject());
+        int p = lookup(t.getPredicate());
+        int o = lookup(t.getObject());
+        if (s >= 0 && p >= 0 && o >= 0) {
+            m_triples.remove(s, p, o);
+        }
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        return m_triples.size();
+    }
+
+    @Override
+    protected boolean graphBaseContains(Triple t) {
+        if (!t.isConcrete()) {
+            return containsByFind(t);
+        }
+        int s = lookup(t.getSubject());
+        int p = lookup(t.getPredicate());
+        int o = lookup(t.getObject());
+        return s >= 0 && p >= 0 && o >= 0 && m_triples.contains(s, p, o);
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m) {
+        int s = lookupPattern(m.getMatchSubject());
+        int p = lookupPattern(m.getMatchPredicate());
+        int o = lookupPattern(m.getMatchObject());
+        if (s == -2 || p == -2 || o == -2) {
+            return new NullIterator<Triple>();
+        }
+
+        final TripleTable.Cursor cursor = m_triples.find(s, p, o);
+        return new NiceIterator<Triple>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public Triple next() {
+                int triple = cursor.next();
+                return Triple.create(
+                    node(m_triples.getSubject(triple)),
+                    node(m_triples.getPredicate(triple)),
+                    node(m_triples.getObject(triple)));
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        m_triples.release();
+        m_dictionary.release();
+    }
+
+    private int intern(Node node) {
+        return m_dictionary.intern(NodeCodec.encode(node));
+    }
+
+    private int lookup(Node node) {
+        return node.isConcrete() ? m_dictionary.lookup(NodeCodec.encode(node)) : -1;
+    }
+
+    /**
+     * Returns the id of a bound pattern node, {@link TripleTable#ANY} for an
+     * unbound one, or -2 for a term that does not occur in the graph.
+     */
+    private int lookupPattern(Node node) {
+        if (node == null || !node.isConcrete()) {
+            return TripleTable.ANY;
+        }
+        int id = m_dictionary.lookup(NodeCodec.encode(node));
+        return id < 0 ? -2 : id;
+    }
+
+    private Node node(int id) {
+        int slot = id & (s_nodeCacheSize - 1);
+        if (m_nodeIds[slot] == id) {
+            return m_nodes[slot];
+        }
+        Node node = NodeCodec.decode(m_dictionary.get(id));
+        m_nodes[slot] = node;
+        m_nodeIds[slot] = id;
+        return node;
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.graph;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * A growable array of ints kept outside of the Java heap, in direct buffers
+ * of 1M entries each. Indexes are longs so that the array is not limited by
+ * the size of a single buffer. Newly allocated entries are zero.
+ * <p>
+ * A small array lives in a single buffer that starts at 1K entries and
+ * doubles as needed, so that small graphs take little direct memory.
+ */
+public class OffHeapIntArray {
+    final static private int s_chunkShift = 20;
+    final static private int s_chunkSize = 1 << s_chunkShift;
+    final static private int s_chunkMask = s_chunkSize - 1;
+    final static private int s_minCapacity = 1 << 10;
+
+    private ByteBuffer[] m_buffers = new ByteBuffer[4];
+    private IntBuffer[]  m_chunks = new IntBuffer[4];
+    private int          m_chunkCount = 0;
+
+    public OffHeapIntArray() {
+        // chunks are allocated on demand
+    }
+
+    public OffHeapIntArray(long capacity) {
+        ensureCapacity(capacity);
+    }
+
+    public long capacity() {
+        if (m_chunkCount == 1) {
+            return m_chunks[0].capacity();
+        }
+        return (long) m_chunkCount << s_chunkShift;
+    }
+
+    public void ensureCapacity(long capacity) {
+        if (capacity <= capacity()) {
+            return;
+        }
+        if (m_chunkCount == 0 || (m_chunkCount == 1 && m_chunks[0].capacity() < s_chunkSize)) {
+            long size = Math.max(s_minCapacity, 2 * capacity());
+            while (size < capacity && size < s_chunkSize) {
+                size *= 2;
+            }
+            growFirstChunk((int) Math.min(size, s_chunkSize));
+        }
+        while (capacity() < capacity) {
+            if (m_chunkCount == m_chunks.length) {
+                IntBuffer[] chunks = new IntBuffer[m_chunks.length * 2];
+                System.arraycopy(m_chunks, 0, chunks, 0, m_chunkCount);
+                m_chunks = chunks;
+
+                ByteBuffer[] buffers = new ByteBuffer[m_buffers.length * 2];
+                System.arraycopy(m_buffers, 0, buffers, 0, m_chunkCount);
+                m_buffers = buffers;
+            }
+            ByteBuffer buffer = DirectBuffers.allocate(s_chunkSize * 4);
+            m_buffers[m_chunkCount] = buffer;
+            m_chunks[m_chunkCount++] = buffer.order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+    }
+
+    public int get(long index) {
+        return m_chunks[(int) (index >>> s_chunkShift)].get((int) (index & s_chunkMask));
+    }
+
+    public void set(long index, int value) {
+        m_chunks[(int) (index >>> s_chunkShift)].put((int) (index & s_chunkMask), value);
+    }
+
+    public void swap(long i, long j) {
+        int t = get(i);
+        set(i, get(j));
+        set(j, t);
+    }
+
+    /**
+     * Sets the first <code>count</code> entries back to zero.
+     */
+    public void clear(long count) {
+        for (long i = 0; i < count; i++) {
+            set(i, 0);
+        }
+    }
+
+    /**
+     * Frees the underlying buffers. The array is empty afterwards, and
+     * nothing read from it before may be used any more.
+     */
+    public void release() {
+        for (int i = 0; i < m_chunkCount; i++) {
+            DirectBuffers.free(m_buffers[i]);
+        }
+        m_buffers = new ByteBuffer[4];
+        m_chunks = new IntBuffer[4];
+        m_chunkCount = 0;
+    }
+
+    private void growFirstChunk(int size) {
+        ByteBuffer buffer = DirectBuffers.allocate(size * 4);
+        IntBuffer chunk = buffer.order(ByteOrder.nativeOrder()).asIntBuffer();
+        if (m_chunkCount == 1) {
+            IntBuffer old = m_chunks[0].duplicate();
+            old.clear();
+            chunk.put(old);
+            chunk.clear();
+            DirectBuffers.free(m_buffers[0]);
+        }
+        m_buffers[0] = buffer;
+        m_chunks[0] = chunk;
+        m_chunkCount = 1;
+    }
+}
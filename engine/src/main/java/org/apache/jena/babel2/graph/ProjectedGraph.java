@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.graph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.babel2.sink.Projection;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.Filter;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+/**
+ * A read-only view of the triples of another graph that a
+ * {@link Projection} keeps, for writers that need a whole model. Unlike
+ * the projection sink, it does not need the triples grouped by subject:
+ * the types of a subject are looked up in the underlying graph, once.
+ */
+public class ProjectedGraph extends GraphBase {
+    final static private Node s_type = RDF.type.asNode();
+
+    final private Graph                 m_base;
+    final private Projection            m_projection;
+    final private Map<Node, Boolean>    m_subjects = new HashMap<Node, Boolean>();
+
+    public ProjectedGraph(Graph base, Projection projection) {
+        m_base = base;
+        m_projection = projection;
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m) {
+        return m_base.find(m).filterKeep(new Filter<Triple>() {
+            @Override
+            public boolean accept(Triple t) {
+                return m_projection.acceptsPredicate(t.getPredicate().getURI()) && acceptsSubject(t.getSubject());
+            }
+        });
+    }
+
+    @Override
+    protected PrefixMapping createPrefixMapping() {
+        return m_base.getPrefixMapping();
+    }
+
+    private boolean acceptsSubject(Node subject) {
+        if (!m_projection.hasTypeFilter()) {
+            return true;
+        }
+        Boolean accepted = m_subjects.get(subject);
+        if (accepted == null) {
+            List<String> types = new ArrayList<String>();
+            ExtendedIterator<Triple> i = m_base.find(subject, s_type, Node.ANY);
+            try {
+                while (i.hasNext()) {
+                    Node type = i.next().getObject();
+                    if (type.isURI()) {
+                        types.add(type.getURI());
+                    }
+                }
+            } finally {
+                i.close();
+            }
+            accepted = Boolean.valueOf(m_projection.acceptsTypes(types));
+            m_subjects.put(subject, accepted);
+        }
+        return accepted.booleanValue();
+    }
+}
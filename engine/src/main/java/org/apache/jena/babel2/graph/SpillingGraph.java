@@ -0,0 +1,453 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.shared.JenaException;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+/**
+ * A graph for conversions larger than memory. Triples are collected in
+ * memory until there are <code>threshold</code> of them; the batch is then
+ * sorted by subject, predicate and object and written to a temporary file
+ * as a run. Reads are answered by a k-way merge of the runs and the
+ * in-memory batch, which yields triples grouped by subject, as the RSS and
+ * RDF/XML writers want them, and drops duplicates across runs.
+ * <p>
+ * Every run keeps a sparse index of the subjects at regular offsets, so
+ * lookups by subject seek straight to the right part of each file, and
+ * skip the runs whose range of subjects does not take the subject in;
+ * other patterns scan all runs. The run files stay open while the graph
+ * is, so lookups do not reopen them. Triples cannot be deleted. The
+ * temporary files are removed when the graph is closed, so close it.
+ */
+public class SpillingGraph extends GraphBase {
+    final static private int s_indexInterval = 256;
+
+    static private class Record implements Comparable<Record> {
+        final byte[] m_s;
+        final byte[] m_p;
+        final byte[] m_o;
+
+        Record(byte[] s, byte[] p, byte[] o) {
+            m_s = s;
+            m_p = p;
+            m_o = o;
+        }
+
+        public int compareTo(Record other) {
+            int c = NodeCodec.compare(m_s, other.m_s);
+            if (c == 0) {
+                c = NodeCodec.compare(m_p, other.m_p);
+                if (c == 0) {
+                    c = NodeCodec.compare(m_o, other.m_o);
+                }
+            }
+            return c;
+        }
+
+        Triple toTriple() {
+            return Triple.create(NodeCodec.decode(m_s), NodeCodec.decode(m_p), NodeCodec.decode(m_o));
+        }
+    }
+
+    static private class Run {
+        final File              m_file;
+        final List<byte[]>      m_indexSubjects = new ArrayList<byte[]>();
+        final List<Long>        m_indexOffsets = new ArrayList<Long>();
+        byte[]                  m_lastSubject;
+        RandomAccessFile        m_access;
+
+        Run(File file) {
+            m_file = file;
+        }
+
+        /**
+         * Whether the run can have records with the given subject.
+         */
+        boolean covers(byte[] subject) {
+            return !m_indexSubjects.isEmpty() &&
+                NodeCodec.compare(m_indexSubjects.get(0), subject) <= 0 &&
+                NodeCodec.compare(m_lastSubject, subject) >= 0;
+        }
+
+        /**
+         * Returns the offset from which records with the given subject
+         * are to be looked for.
+         */
+        long seek(byte[] subject) {
+            int low = 0, high = m_indexSubjects.size() - 1, found = 0;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (NodeCodec.compare(m_indexSubjects.get(mid), subject) < 0) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return m_indexOffsets.isEmpty() ? 0 : m_indexOffsets.get(found);
+        }
+    }
+
+    static private abstract class Cursor {
+        Record m_current;
+
+        abstract void advance() throws IOException;
+
+        void close() {
+        }
+    }
+
+    static private class ListCursor extends Cursor {
+        final List<Record> m_records;
+        int m_next;
+
+        ListCursor(List<Record> records, int start) {
+            m_records = records;
+            m_next = start;
+            advance();
+        }
+
+        void advance() {
+            m_current = m_next < m_records.size() ? m_records.get(m_next++) : null;
+        }
+    }
+
+    /**
+     * Reads a run's file from a position of its own, so that any number of
+     * cursors can share the file's channel.
+     */
+    static private class ChannelInputStream extends InputStream {
+        final FileChannel m_channel;
+        long m_position;
+
+        ChannelInputStream(FileChannel channel, long position) {
+            m_channel = channel;
+            m_position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = m_channel.read(ByteBuffer.wrap(b, off, len), m_position);
+            if (n > 0) {
+                m_position += n;
+            }
+            return n;
+        }
+    }
+
+    static private class RunCursor extends Cursor {
+        final DataInputStream m_in;
+
+        RunCursor(Run run, long offset, int bufferSize) throws IOException {
+            m_in = new DataInputStream(new BufferedInputStream(
+                new ChannelInputStream(run.m_access.getChannel(), offset), bufferSize));
+            advance();
+        }
+
+        void advance() throws IOException {
+            try {
+                byte[] s = readBytes(m_in);
+                m_current = new Record(s, readBytes(m_in), readBytes(m_in));
+            } catch (EOFException e) {
+                m_current = null;
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                m_in.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    final private int       m_threshold;
+    final private File      m_directory;
+
+    private Set<Triple>     m_buffer = new HashSet<Triple>();
+    private List<Record>    m_sortedBuffer;
+    final private List<Run> m_runs = new ArrayList<Run>();
+    private int             m_size = -1;
+
+    /**
+     * @param threshold the number of triples kept in memory before spilling
+     * @param directory where to put the runs, or null for the temp directory
+     */
+    public SpillingGraph(int threshold, File directory) {
+        m_threshold = threshold;
+        m_directory = directory;
+    }
+
+    public int getRunCount() {
+        return m_runs.size();
+    }
+
+    @Override
+    public void performAdd(Triple t) {
+        if (m_buffer.add(t)) {
+            m_sortedBuffer = null;
+            m_size = -1;
+            if (m_buffer.size() >= m_threshold) {
+                try {
+                    spill();
+                } catch (IOException e) {
+                    throw new JenaException(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        if (m_size < 0) {
+            int size = 0;
+            ExtendedIterator<Triple> i = graphBaseFind(Triple.ANY);
+            try {
+                while (i.hasNext()) {
+                    i.next();
+                    size++;
+                }
+            } finally {
+                i.close();
+            }
+            m_size = size;
+        }
+        return m_size;
+    }
+
+    @Override
+    protected boolean graphBaseContains(Triple t) {
+        if (t.isConcrete() && m_buffer.contains(t)) {
+            return true;
+        }
+        return containsByFind(t);
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m) {
+        Node s = m.getMatchSubject();
+        Node p = m.getMatchPredicate();
+        Node o = m.getMatchObject();
+
+        final byte[] subject = (s != null && s.isConcrete()) ? NodeCodec.encode(s) : null;
+        final byte[] predicate = (p != null && p.isConcrete()) ? NodeCodec.encode(p) : null;
+        final byte[] object = (o != null && o.isConcrete()) ? NodeCodec.encode(o) : null;
+
+        final PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(m_runs.size() + 1, new Comparator<Cursor>() {
+            public int compare(Cursor a, Cursor b) {
+                return a.m_current.compareTo(b.m_current);
+            }
+        });
+
+        try {
+            List<Record> sorted = getSortedBuffer();
+            int start = 0;
+            if (subject != null) {
+                start = Collections.binarySearch(sorted, new Record(subject, new byte[0], new byte[0]));
+                start = start < 0 ? -start - 1 : start;
+            }
+            addCursor(queue, new ListCursor(sorted, start));
+
+            for (Run run : m_runs) {
+                if (subject == null) {
+                    addCursor(queue, new RunCursor(run, 0, 64 * 1024));
+                } else if (run.covers(subject)) {
+                    // a subject's records are few, so a small buffer will do
+                    addCursor(queue, new RunCursor(run, run.seek(subject), 8 * 1024));
+                }
+            }
+        } catch (IOException e) {
+            for (Cursor c : queue) {
+                c.close();
+            }
+            throw new JenaException(e);
+        }
+
+        return new NiceIterator<Triple>() {
+            Record m_last;
+            Record m_next;
+
+            @Override
+            public boolean hasNext() {
+                while (m_next == null && !queue.isEmpty()) {
+                    Cursor cursor = queue.poll();
+                    Record record = cursor.m_current;
+                    try {
+                        cursor.advance();
+                    } catch (IOException e) {
+                        throw new JenaException(e);
+                    }
+                    addCursor(queue, cursor);
+
+                    if (subject != null && NodeCodec.compare(record.m_s, subject) > 0) {
+                        // the merge is in order, so nothing else can match
+                        close();
+                        break;
+                    }
+                    if (m_last != null && m_last.compareTo(record) == 0) {
+                        continue; // the same triple spilled in more than one run
+                    }
+                    m_last = record;
+
+                    if ((subject == null || Arrays.equals(subject, record.m_s)) &&
+                        (predicate == null || Arrays.equals(predicate, record.m_p)) &&
+                        (object == null || Arrays.equals(object, record.m_o))) {
+                        m_next = record;
+                    }
+                }
+                return m_next != null;
+            }
+
+            @Override
+            public Triple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Record record = m_next;
+                m_next = null;
+                return record.toTriple();
+            }
+
+            @Override
+            public void close() {
+                while (!queue.isEmpty()) {
+                    queue.poll().close();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        for (Run run : m_runs) {
+            try {
+                run.m_access.close();
+            } catch (IOException e) {
+                // deleted all the same
+            }
+            run.m_file.delete();
+        }
+        m_runs.clear();
+        m_buffer = new HashSet<Triple>();
+        m_sortedBuffer = null;
+    }
+
+    static private void addCursor(PriorityQueue<Cursor> queue, Cursor cursor) {
+        if (cursor.m_current != null) {
+            queue.add(cursor);
+        }
+    }
+
+    private List<Record> getSortedBuffer() {
+        if (m_sortedBuffer == null) {
+            List<Record> records = new ArrayList<Record>(m_buffer.size());
+            for (Triple t : m_buffer) {
+                records.add(new Record(
+                    NodeCodec.encode(t.getSubject()),
+                    NodeCodec.encode(t.getPredicate()),
+                    NodeCodec.encode(t.getObject())));
+            }
+            Collections.sort(records);
+            m_sortedBuffer = records;
+        }
+        return m_sortedBuffer;
+    }
+
+    private void spill() throws IOException {
+        List<Record> records = getSortedBuffer();
+
+        // not deleteOnExit, which would hold on to every run ever written
+        File file = File.createTempFile("babel-run-", ".bin", m_directory);
+        Run run = new Run(file);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        try {
+            long offset = 0;
+            for (int i = 0; i < records.size(); i++) {
+                Record record = records.get(i);
+                if (i % s_indexInterval == 0) {
+                    run.m_indexSubjects.add(record.m_s);
+                    run.m_indexOffsets.add(offset);
+                }
+                offset += writeBytes(out, record.m_s);
+                offset += writeBytes(out, record.m_p);
+                offset += writeBytes(out, record.m_o);
+            }
+            if (!records.isEmpty()) {
+                run.m_lastSubject = records.get(records.size() - 1).m_s;
+            }
+        } finally {
+            out.close();
+        }
+        run.m_access = new RandomAccessFile(file, "r");
+
+        m_runs.add(run);
+        m_buffer = new HashSet<Triple>();
+        m_sortedBuffer = null;
+    }
+
+    static private int writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        return 4 + bytes.length;
+    }
+
+    static private byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,385 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.graph;
+
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of triples of term ids, packed three ints per triple in off-heap
+ * memory. Membership is answered by an open-addressing hash table; pattern
+ * lookups use SPO, POS and OSP indexes, which are permutations of the triple
+ * numbers sorted in the respective column order.
+ * <p>
+ * The indexes are built lazily, on the first lookup that needs them, and
+ * dropped on every change. This suits the load-everything-then-read usage
+ * of conversions: each index is sorted once, after all triples are in.
+ * <p>
+ * All tables start small and grow with the data. {@link #release()} frees
+ * their memory at once.
+ */
+public class TripleTable {
+    final static public int ANY = -1;
+
+    final static private int SPO = 0;
+    final static private int POS = 1;
+    final static private int OSP = 2;
+    final static private int[][] s_orders = { { 0, 1, 2 }, { 1, 2, 0 }, { 2, 0, 1 } };
+
+    final static private int s_tombstone = -1;
+    final static private int s_initialTableSize = 1 << 10;
+
+    private OffHeapIntArray         m_triples = new OffHeapIntArray();
+    private int                     m_size = 0;
+
+    private OffHeapIntArray         m_table;
+    private int                     m_tableMask;
+    private int                     m_tombstones = 0;
+
+    private OffHeapIntArray[]       m_indexes = new OffHeapIntArray[3];
+    private int                     m_modCount = 0;
+
+    /**
+     * Iterates over the numbers of the triples matching a pattern.
+     */
+    public abstract class Cursor {
+        final private int m_expectedModCount = m_modCount;
+
+        public abstract boolean hasNext();
+
+        protected abstract int advance();
+
+        public int next() {
+            if (m_expectedModCount != m_modCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return advance();
+        }
+    }
+
+    public TripleTable() {
+        m_table = new OffHeapIntArray(s_initialTableSize);
+        m_tableMask = s_initialTableSize - 1;
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public int getSubject(int triple) {
+        return m_triples.get(3L * triple);
+    }
+
+    public int getPredicate(int triple) {
+        return m_triples.get(3L * triple + 1);
+    }
+
+    public int getObject(int triple) {
+        return m_triples.get(3L * triple + 2);
+    }
+
+    public boolean contains(int s, int p, int o) {
+        return findSlot(s, p, o) >= 0;
+    }
+
+    public boolean add(int s, int p, int o) {
+        int hash = hash(s, p, o);
+        int free = -1;
+        int slot = hash & m_tableMask;
+        for (; ; slot = (slot + 1) & m_tableMask) {
+            int entry = m_table.get(slot);
+            if (entry == 0) {
+                break;
+            } else if (entry == s_tombstone) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (matches(entry - 1, s, p, o)) {
+                return false;
+            }
+        }
+        if (free >= 0) {
+            slot = free;
+            m_tombstones--;
+        }
+
+        int triple = m_size++;
+        m_triples.ensureCapacity(3L * m_size);
+        m_triples.set(3L * triple, s);
+        m_triples.set(3L * triple + 1, p);
+        m_triples.set(3L * triple + 2, o);
+        m_table.set(slot, triple + 1);
+
+        changed();
+        if ((m_size + (long) m_tombstones) * 2 > m_tableMask) {
+            rehash();
+        }
+        return true;
+    }
+
+    /**
+     * Removes a triple; the last triple takes over its number.
+     */
+    public boolean remove(int s, int p, int o) {
+        int slot = findSlot(s, p, o);
+        if (slot < 0) {
+            return false;
+        }
+        int triple = m_table.get(slot) - 1;
+        m_table.set(slot, s_tombstone);
+        m_tombstones++;
+
+        int last = m_size - 1;
+        if (triple != last) {
+            int ls = getSubject(last), lp = getPredicate(last), lo = getObject(last);
+            m_table.set(findSlot(ls, lp, lo), triple + 1);
+            m_triples.set(3L * triple, ls);
+            m_triples.set(3L * triple + 1, lp);
+            m_triples.set(3L * triple + 2, lo);
+        }
+        m_size--;
+
+        changed();
+        return true;
+    }
+
+    /**
+     * Returns a cursor over the triples matching a pattern, where
+     * {@link #ANY} stands for an unbound position.
+     */
+    public Cursor find(int s, int p, int o) {
+        if (s != ANY && p != ANY && o != ANY) {
+            final int slot = findSlot(s, p, o);
+            return new Cursor() {
+                boolean m_done = slot < 0;
+
+                public boolean hasNext() {
+                    return !m_done;
+                }
+
+                protected int advance() {
+                    m_done = true;
+                    return m_table.get(slot) - 1;
+                }
+            };
+        } else if (s == ANY && p == ANY && o == ANY) {
+            return new Cursor() {
+                int m_next = 0;
+
+                public boolean hasNext() {
+                    return m_next < m_size;
+                }
+
+                protected int advance() {
+                    return m_next++;
+                }
+            };
+        }
+
+        if (s != ANY) {
+            if (p != ANY) {
+                return range(SPO, s, p);
+            } else if (o != ANY) {
+                return range(OSP, o, s);
+            } else {
+                return range(SPO, s, ANY);
+            }
+        } else if (p != ANY) {
+            return range(POS, p, o);
+        } else {
+            return range(OSP, o, ANY);
+        }
+    }
+
+    /**
+     * Frees the memory of the table, which is empty afterwards. Open cursors
+     * find no more triples.
+     */
+    public void release() {
+        m_size = 0;
+        m_tombstones = 0;
+        m_modCount++;
+        m_triples.release();
+        m_table.release();
+        for (int i = 0; i < m_indexes.length; i++) {
+            if (m_indexes[i] != null) {
+                m_indexes[i].release();
+                m_indexes[i] = null;
+            }
+        }
+    }
+
+    private Cursor range(int index, final int first, final int second) {
+        final OffHeapIntArray permutation = getIndex(index);
+        final int[] order = s_orders[index];
+
+        // binary search for the first triple with the given prefix
+        int low = 0, high = m_size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(permutation.get(mid), order, first, second) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        final int start = low;
+
+        return new Cursor() {
+            int m_next = start;
+
+            public boolean hasNext() {
+                return m_next < m_size && comparePrefix(permutation.get(m_next), order, first, second) == 0;
+            }
+
+            protected int advance() {
+                return permutation.get(m_next++);
+            }
+        };
+    }
+
+    private int comparePrefix(int triple, int[] order, int first, int second) {
+        int c = compare(m_triples.get(3L * triple + order[0]), first);
+        if (c == 0 && second != ANY) {
+            c = compare(m_triples.get(3L * triple + order[1]), second);
+        }
+        return c;
+    }
+
+    private OffHeapIntArray getIndex(int index) {
+        OffHeapIntArray permutation = m_indexes[index];
+        if (permutation == null) {
+            permutation = new OffHeapIntArray(m_size);
+            for (int i = 0; i < m_size; i++) {
+                permutation.set(i, i);
+            }
+            sort(permutation, s_orders[index], 0, m_size - 1);
+            m_indexes[index] = permutation;
+        }
+        return permutation;
+    }
+
+    private void sort(OffHeapIntArray permutation, int[] order, int low, int high) {
+        while (high - low > 16) {
+            int mid = (low + high) >>> 1;
+            // median of three as the pivot, moved to the end of the range
+            if (compareTriples(permutation.get(mid), permutation.get(low), order) < 0) permutation.swap(mid, low);
+            if (compareTriples(permutation.get(high), permutation.get(low), order) < 0) permutation.swap(high, low);
+            if (compareTriples(permutation.get(mid), permutation.get(high), order) < 0) permutation.swap(mid, high);
+            int pivot = permutation.get(high);
+
+            int i = low;
+            for (int j = low; j < high; j++) {
+                if (compareTriples(permutation.get(j), pivot, order) < 0) {
+                    permutation.swap(i++, j);
+                }
+            }
+            permutation.swap(i, high);
+
+            // recurse into the smaller half to bound the stack depth
+            if (i - low < high - i) {
+                sort(permutation, order, low, i - 1);
+                low = i + 1;
+            } else {
+                sort(permutation, order, i + 1, high);
+                high = i - 1;
+            }
+        }
+
+        for (int i = low + 1; i <= high; i++) {
+            int t = permutation.get(i);
+            int j = i - 1;
+            while (j >= low && compareTriples(permutation.get(j), t, order) > 0) {
+                permutation.set(j + 1, permutation.get(j));
+                j--;
+            }
+            permutation.set(j + 1, t);
+        }
+    }
+
+    private int compareTriples(int a, int b, int[] order) {
+        for (int k = 0; k < 3; k++) {
+            int c = compare(m_triples.get(3L * a + order[k]), m_triples.get(3L * b + order[k]));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    static private int compare(int a, int b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    private int findSlot(int s, int p, int o) {
+        for (int slot = hash(s, p, o) & m_tableMask; ; slot = (slot + 1) & m_tableMask) {
+            int entry = m_table.get(slot);
+            if (entry == 0) {
+                return -1;
+            } else if (entry != s_tombstone && matches(entry - 1, s, p, o)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean matches(int triple, int s, int p, int o) {
+        return getSubject(triple) == s && getPredicate(triple) == p && getObject(triple) == o;
+    }
+
+    private void changed() {
+        m_modCount++;
+        // not freed, as open cursors may still read them
+        m_indexes[SPO] = null;
+        m_indexes[POS] = null;
+        m_indexes[OSP] = null;
+    }
+
+    private void rehash() {
+        int capacity = m_tableMask + 1;
+        while (m_size * 2L > capacity / 2) {
+            capacity *= 2;
+        }
+        OffHeapIntArray table = new OffHeapIntArray(capacity);
+        int mask = capacity - 1;
+
+        for (int triple = 0; triple < m_size; triple++) {
+            int slot = hash(getSubject(triple), getPredicate(triple), getObject(triple)) & mask;
+            while (table.get(slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table.set(slot, triple + 1);
+        }
+
+        m_table.release();
+        m_table = table;
+        m_tableMask = mask;
+        m_tombstones = 0;
+    }
+
+    static private int hash(int s, int p, int o) {
+        int h = (s * 31 + p) * 31 + o;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+}
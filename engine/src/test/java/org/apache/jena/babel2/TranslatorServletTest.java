@@ -0,0 +1,228 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks that the conversion of a URL is sent as it goes. The source holds
+ * back the second half of its data until the first of the result has
+ * reached the response, which only happens if the result is streamed.
+ */
+public class TranslatorServletTest {
+	final static private int s_half = 5000;
+	
+	final private CountDownLatch	m_firstWrite = new CountDownLatch(1);
+	private volatile boolean		m_streamed;
+	private HttpServer				m_server;
+	
+	@Before
+	public void setUp() throws IOException {
+		m_server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		m_server.createContext("/data.rdf", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().set("Content-Type", "application/rdf+xml");
+				exchange.sendResponseHeaders(200, 0);
+				
+				Writer writer = new OutputStreamWriter(exchange.getResponseBody(), "ISO-8859-1");
+				try {
+					writer.write("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" " +
+						"xmlns:ex=\"http://example.org/\">\n");
+					writeDescriptions(writer, 0, s_half);
+					writer.flush();
+					
+					try {
+						m_streamed = m_firstWrite.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					
+					writeDescriptions(writer, s_half, 2 * s_half);
+					writer.write("</rdf:RDF>\n");
+				} finally {
+					writer.close();
+				}
+			}
+		});
+		m_server.start();
+	}
+	
+	@After
+	public void tearDown() {
+		m_server.stop(0);
+	}
+	
+	@Test
+	public void testLargeURLConversionIsStreamed() throws Exception {
+		TranslatorServlet servlet = new TranslatorServlet();
+		servlet.init(new Mock() {
+			Object answer(String name, Object[] args) {
+				return name.equals("getServletContext") ? new Mock().as(ServletContext.class) : null;
+			}
+		}.as(ServletConfig.class));
+		
+		String url = "http://127.0.0.1:" + m_server.getAddress().getPort() + "/data.rdf";
+		MockResponse response = new MockResponse();
+		servlet.doGet(
+			new MockRequest("reader=rdf-xml&writer=rdf-xml&url=" + URLEncoder.encode(url, "UTF-8")).as(HttpServletRequest.class), 
+			response.as(HttpServletResponse.class));
+		
+		assertTrue("The result was held back until the whole source was read", m_streamed);
+		assertEquals(HttpServletResponse.SC_OK, response.m_status);
+		
+		String output = response.m_output.toString("UTF-8");
+		assertTrue(output.contains("Item 0<"));
+		assertTrue(output.contains("Item " + (2 * s_half - 1) + "<"));
+	}
+	
+	static private void writeDescriptions(Writer writer, int from, int to) throws IOException {
+		for (int i = from; i < to; i++) {
+			writer.write("<rdf:Description rdf:about=\"http://example.org/item" + i + "\">" +
+				"<ex:label>Item " + i + "</ex:label></rdf:Description>\n");
+		}
+	}
+	
+	/**
+	 * Implements an interface with {@link #answer}, and with null, -1 or
+	 * false for what it does not answer.
+	 */
+	static private class Mock implements InvocationHandler {
+		@SuppressWarnings("unchecked")
+		<T> T as(Class<T> c) {
+			return (T) Proxy.newProxyInstance(c.getClassLoader(), new Class<?>[] { c }, this);
+		}
+		
+		Object answer(String name, Object[] args) {
+			return null;
+		}
+		
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			} else if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			} else if (name.equals("toString")) {
+				return getClass().getName();
+			}
+			
+			Object result = answer(name, args);
+			Class<?> type = method.getReturnType();
+			if (result != null || !type.isPrimitive() || type == void.class) {
+				return result;
+			} else if (type == boolean.class) {
+				return Boolean.FALSE;
+			} else if (type == int.class) {
+				return Integer.valueOf(-1);
+			} else if (type == long.class) {
+				return Long.valueOf(-1);
+			}
+			throw new UnsupportedOperationException(name);
+		}
+	}
+	
+	static private class MockRequest extends Mock {
+		final private String				m_queryString;
+		final private Map<String, Object>	m_attributes = new HashMap<String, Object>();
+		
+		MockRequest(String queryString) {
+			m_queryString = queryString;
+		}
+		
+		@Override
+		Object answer(String name, Object[] args) {
+			if (name.equals("getMethod")) {
+				return "GET";
+			} else if (name.equals("getQueryString")) {
+				return m_queryString;
+			} else if (name.equals("getLocale")) {
+				return Locale.ENGLISH;
+			} else if (name.equals("getRemoteAddr")) {
+				return "127.0.0.1";
+			} else if (name.equals("getAttribute")) {
+				return m_attributes.get(args[0]);
+			} else if (name.equals("setAttribute")) {
+				m_attributes.put((String) args[0], args[1]);
+			}
+			return null;
+		}
+	}
+	
+	private class MockResponse extends Mock {
+		final ByteArrayOutputStream	m_output = new ByteArrayOutputStream();
+		int							m_status = HttpServletResponse.SC_OK;
+		boolean						m_committed;
+		
+		@Override
+		Object answer(String name, Object[] args) {
+			if (name.equals("setStatus") || name.equals("sendError")) {
+				m_status = (Integer) args[0];
+			} else if (name.equals("isCommitted")) {
+				return m_committed;
+			} else if (name.equals("resetBuffer")) {
+				m_output.reset();
+			} else if (name.equals("getOutputStream")) {
+				return new ServletOutputStream() {
+					@Override
+					public void write(int b) {
+						write(new byte[] { (byte) b }, 0, 1);
+					}
+					
+					@Override
+					public void write(byte[] b, int off, int len) {
+						m_output.write(b, off, len);
+						m_committed = true;
+						m_firstWrite.countDown();
+					}
+				};
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.generic;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.apache.jena.babel2.TripleSink;
+import org.apache.jena.babel2.sink.SamplingSink;
+import org.apache.jena.babel2.sink.Sinks;
+import org.junit.Test;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.shared.JenaException;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+/**
+ * Writes models through the streaming RDF/XML sink and checks that Jena
+ * reads back the same graph.
+ */
+public class RdfXmlConverterTest {
+	final static private String NS = "http://example.org/";
+	final static private String LATE = "http://late.example.org/";
+	final static private String OTHER = "http://other.example.org/";
+
+	@Test
+	public void testNodes() throws Exception {
+		Model model = ModelFactory.createDefaultModel();
+		model.setNsPrefix("ex", NS);
+		model.setNsPrefix("rdfs", RDFS.getURI());
+		// not XML names, so left out of the root element
+		model.setNsPrefix("", OTHER);
+		model.setNsPrefix("xmlfoo", "http://xml.example.org/");
+
+		Resource subject = model.createResource(NS + "subject");
+		Property p = model.createProperty(NS + "p");
+		Property q = model.createProperty(OTHER + "q-1");
+
+		subject.addProperty(RDF.type, model.createResource(NS + "Thing"));
+		subject.addProperty(RDFS.label, "plain");
+		subject.addProperty(RDFS.label, "English", "en");
+		subject.addProperty(RDFS.label, "Deutsch", "de-CH");
+		subject.addLiteral(p, model.createTypedLiteral("42", XSDDatatype.XSDint));
+		subject.addLiteral(p, model.createTypedLiteral("2012-05-01", XSDDatatype.XSDdate));
+		subject.addProperty(p, model.createLiteral("some <b>bold</b> text", true));
+		subject.addProperty(q, model.createResource("http://example.org/path/with%20space?q=a&b=c#frag"));
+		subject.addProperty(model.createProperty("http://xml.example.org/p"), "x");
+
+		// blank nodes as subject and object, and one only an object
+		Resource first = model.createResource();
+		Resource second = model.createResource();
+		first.addProperty(p, second);
+		second.addProperty(p, first);
+		second.addProperty(q, "blank");
+		subject.addProperty(q, model.createResource());
+
+		assertRoundTrip(model);
+	}
+
+	@Test
+	public void testEscaping() throws Exception {
+		Model model = ModelFactory.createDefaultModel();
+		Resource subject = model.createResource(NS + "subject");
+		Property p = model.createProperty(NS + "p");
+
+		subject.addProperty(p, "<tag> & \"quoted\" 'apostrophe'");
+		subject.addProperty(p, "line\nbreak\r\nand\ttab");
+		subject.addProperty(p, "caf\u00e9 \u65e5\u672c \ud834\udd1e");
+		subject.addProperty(p, "");
+		subject.addProperty(p, "a ]]> b", "en");
+		model.createResource(NS + "search?a=1&b=2").addProperty(p, model.createResource(NS + "page#top"));
+
+		assertRoundTrip(model);
+	}
+
+	/*
+	 * XML 1.0 has no way to write most control characters, so the sink
+	 * refuses them rather than write a document no parser will read.
+	 */
+	@Test
+	public void testControlCharacters() throws Exception {
+		Model model = ModelFactory.createDefaultModel();
+		model.createResource(NS + "subject").addProperty(model.createProperty(NS + "p"), "control \u0001");
+		try {
+			Sinks.emit(model, new RdfXmlConverter().createSink(new StringWriter(), new Properties(), Locale.ENGLISH));
+			fail("wrote a control character");
+		} catch (JenaException e) {
+			// expected
+		}
+	}
+
+	/*
+	 * Prefixes and namespaces that turn up once the root element is
+	 * written, in triples after the sample, or as prefixes after it.
+	 */
+	@Test
+	public void testAfterSample() throws Exception {
+		Model expected = ModelFactory.createDefaultModel();
+		StringWriter writer = new StringWriter();
+		TripleSink sink = new RdfXmlConverter().createSink(writer, new Properties(), Locale.ENGLISH);
+
+		Node p = Node.createURI(NS + "p");
+		sink.start();
+		sink.prefix("ex", NS);
+		for (int i = 0; i < SamplingSink.s_defaultSampleSize + 10; i++) {
+			emit(sink, expected, Triple.create(Node.createURI(NS + "s" + i), p, Node.createLiteral("v" + i)));
+		}
+
+		sink.prefix("late", LATE);
+		sink.prefix("ex", OTHER);
+
+		Node subject = Node.createURI(NS + "last");
+		emit(sink, expected, Triple.create(subject, p, Node.createURI(NS + "o")));
+		emit(sink, expected, Triple.create(subject, Node.createURI(LATE + "p"), Node.createURI(LATE + "o")));
+		emit(sink, expected, Triple.create(subject, Node.createURI(OTHER + "p"), Node.createLiteral("other")));
+		emit(sink, expected, Triple.create(subject, Node.createURI(OTHER + "q"), Node.createURI(OTHER + "o")));
+		emit(sink, expected, Triple.create(subject, p, Node.createLiteral("after")));
+		sink.finish();
+
+		assertIsomorphic(expected, writer.toString());
+	}
+
+	private void emit(TripleSink sink, Model expected, Triple triple) throws Exception {
+		sink.triple(triple);
+		expected.getGraph().add(triple);
+	}
+
+	private void assertRoundTrip(Model model) throws Exception {
+		StringWriter writer = new StringWriter();
+		Sinks.emit(model, new RdfXmlConverter().createSink(writer, new Properties(), Locale.ENGLISH));
+		assertIsomorphic(model, writer.toString());
+	}
+
+	private void assertIsomorphic(Model expected, String xml) {
+		Model actual = ModelFactory.createDefaultModel();
+		actual.read(new StringReader(xml), NS, "RDF/XML");
+		assertTrue(xml, expected.isIsomorphicWith(actual));
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.generic;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.apache.jena.babel2.TripleSink;
+import org.apache.jena.babel2.sink.SamplingSink;
+import org.apache.jena.babel2.sink.Sinks;
+import org.junit.Test;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import com.hp.hpl.jena.vocabulary.XSD;
+
+/**
+ * Writes models through the streaming Turtle sink and checks that Jena
+ * reads back the same graph.
+ */
+public class TurtleConverterTest {
+	final static private String NS = "http://example.org/";
+	final static private String LATE = "http://late.example.org/";
+	final static private String OTHER = "http://other.example.org/";
+
+	@Test
+	public void testNodes() throws Exception {
+		Model model = ModelFactory.createDefaultModel();
+		model.setNsPrefix("", NS);
+		model.setNsPrefix("rdfs", RDFS.getURI());
+		model.setNsPrefix("xsd", XSD.getURI());
+
+		Resource subject = model.createResource(NS + "subject");
+		Property p = model.createProperty(NS + "p");
+		Property q = model.createProperty(OTHER + "q-1");
+
+		subject.addProperty(RDF.type, model.createResource(NS + "Thing"));
+		subject.addProperty(RDFS.label, "plain");
+		subject.addProperty(RDFS.label, "English", "en");
+		subject.addProperty(RDFS.label, "Deutsch", "de-CH");
+		subject.addLiteral(p, model.createTypedLiteral("42", XSDDatatype.XSDint));
+		subject.addLiteral(p, model.createTypedLiteral("2012-05-01", XSDDatatype.XSDdate));
+		subject.addLiteral(p, model.createTypedLiteral("x", "http://example.org/type#unprefixed"));
+		subject.addProperty(p, model.createLiteral("some <b>bold</b> text", true));
+		subject.addProperty(q, model.createResource(NS + "1st"));
+		subject.addProperty(q, model.createResource("http://example.org/path/with%20space?q=a&b=c#frag"));
+
+		// blank nodes as subject and object, and one only an object
+		Resource first = model.createResource();
+		Resource second = model.createResource();
+		first.addProperty(p, second);
+		second.addProperty(p, first);
+		second.addProperty(q, "blank");
+		subject.addProperty(q, model.createResource());
+
+		assertRoundTrip(model);
+	}
+
+	@Test
+	public void testEscaping() throws Exception {
+		Model model = ModelFactory.createDefaultModel();
+		Resource subject = model.createResource(NS + "subject");
+		Property p = model.createProperty(NS + "p");
+
+		subject.addProperty(p, "\"quoted\" and \\backslashed\\");
+		subject.addProperty(p, "line\nbreak\r\nand\ttab");
+		subject.addProperty(p, "control \u0001 \u001f \u007f characters");
+		subject.addProperty(p, "caf\u00e9 \u65e5\u672c \ud834\udd1e");
+		subject.addProperty(p, "");
+		subject.addProperty(p, "trailing quote\"");
+
+		assertRoundTrip(model);
+	}
+
+	/*
+	 * Prefixes and namespaces that turn up once the header is written, in
+	 * triples after the sample, or as prefixes after it.
+	 */
+	@Test
+	public void testAfterSample() throws Exception {
+		Model expected = ModelFactory.createDefaultModel();
+		StringWriter writer = new StringWriter();
+		TripleSink sink = new TurtleConverter().createSink(writer, new Properties(), Locale.ENGLISH);
+
+		Node p = Node.createURI(NS + "p");
+		sink.start();
+		sink.prefix("ex", NS);
+		for (int i = 0; i < SamplingSink.s_defaultSampleSize + 10; i++) {
+			emit(sink, expected, Triple.create(Node.createURI(NS + "s" + i), p, Node.createLiteral("v" + i)));
+		}
+
+		// a new prefix, and one that would change names already written
+		sink.prefix("late", LATE);
+		sink.prefix("ex", OTHER);
+
+		Node subject = Node.createURI(NS + "last");
+		emit(sink, expected, Triple.create(subject, p, Node.createURI(NS + "o")));
+		emit(sink, expected, Triple.create(subject, Node.createURI(LATE + "p"), Node.createURI(LATE + "o")));
+		emit(sink, expected, Triple.create(subject, Node.createURI(OTHER + "p"), Node.createURI(OTHER + "o")));
+		emit(sink, expected, Triple.create(subject, RDF.type.asNode(), Node.createURI("http://unseen.example.org/Type")));
+		sink.finish();
+
+		assertIsomorphic(expected, writer.toString());
+	}
+
+	private void emit(TripleSink sink, Model expected, Triple triple) throws Exception {
+		sink.triple(triple);
+		expected.getGraph().add(triple);
+	}
+
+	private void assertRoundTrip(Model model) throws Exception {
+		StringWriter writer = new StringWriter();
+		Sinks.emit(model, new TurtleConverter().createSink(writer, new Properties(), Locale.ENGLISH));
+		assertIsomorphic(model, writer.toString());
+	}
+
+	private void assertIsomorphic(Model expected, String turtle) {
+		Model actual = ModelFactory.createDefaultModel();
+		actual.read(new StringReader(turtle), NS, "TURTLE");
+		assertTrue(turtle, expected.isIsomorphicWith(actual));
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.graph;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link OffHeapDictionary} against a <code>HashMap</code> from the
+ * same keys to the ids they were given.
+ */
+public class OffHeapDictionaryTest {
+    @Test
+    public void testAgainstHashMap() throws Exception {
+        Random random = new Random(1);
+        OffHeapDictionary dictionary = new OffHeapDictionary();
+        Map<String, Integer> reference = new HashMap<String, Integer>();
+
+        // enough bytes to span several pages
+        for (int i = 0; i < 100000; i++) {
+            String key = "http://example.org/" + random.nextInt(50000);
+            int id = dictionary.intern(key.getBytes("UTF-8"));
+            Integer expected = reference.get(key);
+            if (expected == null) {
+                assertEquals(reference.size(), id);
+                reference.put(key, id);
+            } else {
+                assertEquals(expected.intValue(), id);
+            }
+        }
+        assertEquals(reference.size(), dictionary.size());
+
+        for (Map.Entry<String, Integer> entry : reference.entrySet()) {
+            assertEquals(entry.getValue().intValue(), dictionary.lookup(entry.getKey().getBytes("UTF-8")));
+            assertEquals(entry.getKey(), new String(dictionary.get(entry.getValue()), "UTF-8"));
+        }
+        assertEquals(-1, dictionary.lookup("http://example.org/none".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testOversizedEntry() {
+        OffHeapDictionary dictionary = new OffHeapDictionary();
+        byte[] small = { 1, 2, 3 };
+        byte[] big = new byte[17 * 1024 * 1024];
+        big[big.length - 1] = 7;
+
+        int smallId = dictionary.intern(small);
+        int bigId = dictionary.intern(big);
+        int afterId = dictionary.intern(new byte[] { 4 });
+
+        assertArrayEquals(small, dictionary.get(smallId));
+        assertArrayEquals(big, dictionary.get(bigId));
+        assertArrayEquals(new byte[] { 4 }, dictionary.get(afterId));
+        assertEquals(bigId, dictionary.lookup(big));
+
+        dictionary.release();
+        assertEquals(0, dictionary.size());
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+/**
+ * Checks a Model over an {@link OffHeapGraph} against Jena's default Model
+ * holding the same statements, for every find pattern.
+ */
+public class OffHeapGraphTest {
+    final static private String NS = "http://example.org/";
+
+    @Test
+    public void testFindPatterns() {
+        Model model = ModelFactory.createModelForGraph(new OffHeapGraph());
+        Model reference = ModelFactory.createDefaultModel();
+        try {
+            List<Statement> statements = fill(model, reference);
+            assertEquals(reference.size(), model.size());
+
+            for (Statement statement : statements) {
+                Resource s = statement.getSubject();
+                Property p = statement.getPredicate();
+                RDFNode o = statement.getObject();
+                for (int pattern = 0; pattern < 8; pattern++) {
+                    Resource ms = (pattern & 1) != 0 ? s : null;
+                    Property mp = (pattern & 2) != 0 ? p : null;
+                    RDFNode mo = (pattern & 4) != 0 ? o : null;
+                    assertEquals(
+                        "pattern " + ms + " " + mp + " " + mo,
+                        triples(reference.listStatements(ms, mp, mo)), 
+                        triples(model.listStatements(ms, mp, mo)));
+                }
+                assertTrue(model.contains(statement));
+            }
+
+            // terms the graph has never seen match nothing
+            Resource unknown = model.createResource(NS + "unknown");
+            assertFalse(model.listStatements(unknown, null, (RDFNode) null).hasNext());
+            assertFalse(model.listStatements(null, null, model.createLiteral("unknown")).hasNext());
+        } finally {
+            model.close();
+            reference.close();
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        Model model = ModelFactory.createModelForGraph(new OffHeapGraph());
+        Model reference = ModelFactory.createDefaultModel();
+        try {
+            List<Statement> statements = fill(model, reference);
+            for (int i = 0; i < statements.size(); i += 2) {
+                model.remove(statements.get(i));
+                reference.remove(statements.get(i));
+            }
+            assertEquals(reference.size(), model.size());
+            assertEquals(triples(reference.listStatements()), triples(model.listStatements()));
+
+            Property p = model.createProperty(NS + "p1");
+            assertEquals(
+                triples(reference.listStatements(null, p, (RDFNode) null)), 
+                triples(model.listStatements(null, p, (RDFNode) null)));
+        } finally {
+            model.close();
+            reference.close();
+        }
+    }
+
+    /**
+     * Adds the same random statements, about URIs and blank nodes, with
+     * resources and all kinds of literals as objects, to both models.
+     */
+    static private List<Statement> fill(Model model, Model reference) {
+        Random random = new Random(1);
+        List<Resource> subjects = new ArrayList<Resource>();
+        for (int i = 0; i < 20; i++) {
+            subjects.add(model.createResource(NS + "s" + i));
+        }
+        for (int i = 0; i < 5; i++) {
+            subjects.add(model.createResource());
+        }
+
+        List<Statement> statements = new ArrayList<Statement>();
+        for (int i = 0; i < 500; i++) {
+            Resource s = subjects.get(random.nextInt(subjects.size()));
+            Property p = model.createProperty(NS + "p" + random.nextInt(4));
+            RDFNode o;
+            switch (random.nextInt(5)) {
+            case 0:  o = subjects.get(random.nextInt(subjects.size())); break;
+            case 1:  o = model.createLiteral("text " + random.nextInt(30)); break;
+            case 2:  o = model.createLiteral("text " + random.nextInt(30), random.nextBoolean() ? "en" : "fr"); break;
+            case 3:  o = model.createTypedLiteral(Integer.toString(random.nextInt(30)), XSDDatatype.XSDint); break;
+            default: o = model.createResource(NS + "o" + random.nextInt(30)); break;
+            }
+            Statement statement = model.createStatement(s, p, o);
+            model.add(statement);
+            reference.add(statement);
+            statements.add(statement);
+        }
+        return statements;
+    }
+
+    static private Set<Triple> triples(StmtIterator iterator) {
+        Set<Triple> triples = new HashSet<Triple>();
+        try {
+            while (iterator.hasNext()) {
+                triples.add(iterator.nextStatement().asTriple());
+            }
+        } finally {
+            iterator.close();
+        }
+        return triples;
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.babel2.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link TripleTable} against a <code>HashSet</code> of the same
+ * triples, through random adds, removes and lookups of every pattern.
+ */
+public class TripleTableTest {
+    final static private int ANY = TripleTable.ANY;
+
+    @Test
+    public void testAgainstHashSet() {
+        Random random = new Random(1);
+        TripleTable table = new TripleTable();
+        Set<List<Integer>> reference = new HashSet<List<Integer>>();
+
+        for (int round = 0; round < 4; round++) {
+            // enough triples for the tables to grow past their first chunk
+            for (int i = 0; i < 10000; i++) {
+                List<Integer> triple = randomTriple(random);
+                assertEquals(reference.add(triple), table.add(triple.get(0), triple.get(1), triple.get(2)));
+
+                if (i % 5 == 0) {
+                    List<Integer> removed = randomTriple(random);
+                    assertEquals(reference.remove(removed), table.remove(removed.get(0), removed.get(1), removed.get(2)));
+                }
+            }
+            assertEquals(reference.size(), table.size());
+
+            // lookups in between rounds of changes rebuild the indexes
+            for (int q = 0; q < 100; q++) {
+                int s = random.nextBoolean() ? random.nextInt(300) : ANY;
+                int p = random.nextBoolean() ? random.nextInt(10) : ANY;
+                int o = random.nextBoolean() ? random.nextInt(500) : ANY;
+                assertEquals(match(reference, s, p, o), find(table, s, p, o));
+            }
+        }
+
+        for (List<Integer> triple : new ArrayList<List<Integer>>(reference)) {
+            assertEquals(true, table.contains(triple.get(0), triple.get(1), triple.get(2)));
+        }
+    }
+
+    @Test
+    public void testRemoveAll() {
+        TripleTable table = new TripleTable();
+        for (int i = 0; i < 5000; i++) {
+            table.add(i % 50, i % 3, i);
+        }
+        assertEquals(5000, table.size());
+        assertEquals(1667, find(table, ANY, 1, ANY).size());
+
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(true, table.remove(i % 50, i % 3, i));
+        }
+        assertEquals(0, table.size());
+        assertEquals(0, find(table, ANY, ANY, ANY).size());
+        assertFalse(table.contains(0, 0, 0));
+
+        // the slots left by the removals are reused
+        table.add(1, 2, 3);
+        assertEquals(1, find(table, 1, ANY, ANY).size());
+    }
+
+    @Test
+    public void testRelease() {
+        TripleTable table = new TripleTable();
+        for (int i = 0; i < 1000; i++) {
+            table.add(i, 0, i);
+        }
+        TripleTable.Cursor cursor = table.find(ANY, 0, ANY);
+        table.release();
+
+        assertEquals(0, table.size());
+        assertFalse(cursor.hasNext());
+    }
+
+    static private List<Integer> randomTriple(Random random) {
+        return Arrays.asList(random.nextInt(300), random.nextInt(10), random.nextInt(500));
+    }
+
+    static private Set<List<Integer>> match(Set<List<Integer>> triples, int s, int p, int o) {
+        Set<List<Integer>> matches = new HashSet<List<Integer>>();
+        for (List<Integer> triple : triples) {
+            if ((s == ANY || triple.get(0) == s) && (p == ANY || triple.get(1) == p) && (o == ANY || triple.get(2) == o)) {
+                matches.add(triple);
+            }
+        }
+        return matches;
+    }
+
+    static private Set<List<Integer>> find(TripleTable table, int s, int p, int o) {
+        Set<List<Integer>> found = new HashSet<List<Integer>>();
+        TripleTable.Cursor cursor = table.find(s, p, o);
+        while (cursor.hasNext()) {
+            int triple = cursor.next();
+            List<Integer> ids = Arrays.asList(table.getSubject(triple), table.getPredicate(triple), table.getObject(triple));
+            assertEquals("duplicate " + ids, true, found.add(ids));
+        }
+        return found;
+    }
+}